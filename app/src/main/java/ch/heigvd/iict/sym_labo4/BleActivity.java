@@ -18,8 +18,10 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ListView;
+import android.widget.RadioGroup;
 import android.widget.TextView;
 
 import androidx.annotation.RequiresApi;
@@ -32,6 +34,8 @@ import java.util.UUID;
 
 import ch.heigvd.iict.sym_labo4.abstractactivies.BaseTemplateActivity;
 import ch.heigvd.iict.sym_labo4.adapters.ResultsAdapter;
+import ch.heigvd.iict.sym_labo4.ble.ConnectionProfile;
+import ch.heigvd.iict.sym_labo4.ble.TimeSeries;
 import ch.heigvd.iict.sym_labo4.viewmodels.BleOperationsViewModel;
 
 /**
@@ -59,13 +63,20 @@ public class BleActivity extends BaseTemplateActivity {
     private ListView scanResults = null;
     private TextView emptyScanResults = null;
 
+    private RadioGroup profile = null;
+    private TextView connectionParameters = null;
+
     private TextView temperature = null;
     private Button temperatureButton = null;
+    private CheckBox temperatureSampling = null;
 
     private TextView clickedButtons = null;
 
     private EditText integer = null;
     private Button integerBtn = null;
+    private CheckBox integerCoalesce = null;
+    private Button integerStreamBtn = null;
+    private TextView integerStream = null;
 
     private TextView time = null;
     private Button timeBtn = null;
@@ -77,6 +88,9 @@ public class BleActivity extends BaseTemplateActivity {
     //adapters
     private ResultsAdapter scanResultsAdapter = null;
 
+    //number of consecutive integers sent by the stream button
+    private static final int STREAM_LENGTH = 1000;
+
     //states
     private Handler handler = null;
     private boolean isScanning = false;
@@ -100,11 +114,17 @@ public class BleActivity extends BaseTemplateActivity {
         this.scanResults = findViewById(R.id.ble_scanresults);
         this.emptyScanResults = findViewById(R.id.ble_scanresults_empty);
 
+        this.profile = findViewById(R.id.ble_profile);
+        this.connectionParameters = findViewById(R.id.ble_connection_parameters);
         this.temperature = findViewById(R.id.ble_temperature);
         this.temperatureButton = findViewById(R.id.ble_temperature_btn);
+        this.temperatureSampling = findViewById(R.id.ble_temperature_sampling);
         this.clickedButtons = findViewById(R.id.ble_clicked_buttons);
         this.integer = findViewById(R.id.ble_integer);
         this.integerBtn = findViewById(R.id.ble_integer_btn);
+        this.integerCoalesce = findViewById(R.id.ble_integer_coalesce);
+        this.integerStreamBtn = findViewById(R.id.ble_integer_stream_btn);
+        this.integerStream = findViewById(R.id.ble_integer_stream);
         this.time = findViewById(R.id.ble_time);
         this.timeBtn = findViewById(R.id.ble_time_btn);
 
@@ -128,10 +148,24 @@ public class BleActivity extends BaseTemplateActivity {
             });
         });
 
-        this.temperatureButton.setOnClickListener(view -> {
-            if (this.bleViewModel.readTemperature()) {
-                this.bleViewModel.temperatureChanged().observe(this, (temperature) -> updateTemperature());
-            }
+        this.profile.check(profileButton(this.bleViewModel.getConnectionProfile()));
+        this.profile.setOnCheckedChangeListener((group, checkedId) -> {
+            if (checkedId == R.id.ble_profile_high_throughput)
+                this.bleViewModel.setConnectionProfile(ConnectionProfile.HIGH_THROUGHPUT);
+            else if (checkedId == R.id.ble_profile_low_power)
+                this.bleViewModel.setConnectionProfile(ConnectionProfile.LOW_POWER);
+            else
+                this.bleViewModel.setConnectionProfile(ConnectionProfile.LOW_LATENCY);
+        });
+
+        this.temperatureButton.setOnClickListener(view -> this.bleViewModel.readTemperature());
+
+        this.temperatureSampling.setChecked(this.bleViewModel.isTemperatureSampling());
+        this.temperatureSampling.setOnCheckedChangeListener((button, isChecked) -> {
+            if (isChecked)
+                this.bleViewModel.startTemperatureSampling(BleOperationsViewModel.DEFAULT_TEMPERATURE_PERIOD_MS);
+            else
+                this.bleViewModel.stopTemperatureSampling();
         });
 
         this.integerBtn.setOnClickListener(view -> {
@@ -143,6 +177,17 @@ public class BleActivity extends BaseTemplateActivity {
             }
         });
 
+        this.integerStreamBtn.setOnClickListener(view -> {
+            //consecutive values from the one entered (or 0)
+            String text = integer.getText().toString();
+            int first = text.isEmpty() ? 0 : (int) Long.parseLong(text);
+            int[] values = new int[STREAM_LENGTH];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = first + i;
+            }
+            this.bleViewModel.writeIntegers(values, this.integerCoalesce.isChecked());
+        });
+
         this.timeBtn.setOnClickListener(view -> {
             LocalDateTime localDateTime = LocalDateTime.now();
             if (this.bleViewModel.writeCurrentTime(localDateTime)) {
@@ -152,8 +197,13 @@ public class BleActivity extends BaseTemplateActivity {
 
         //ble events
         this.bleViewModel.isConnected().observe(this, (isConnected) -> updateGui());
+        this.bleViewModel.temperatureSeriesChanged().observe(this, (series) -> updateTemperature());
         this.bleViewModel.buttonClickedChanged().observe(this, (clickedButton) -> updateClickedButtons());
         this.bleViewModel.timeChanged().observe(this, (newTime) -> updateTime());
+        this.bleViewModel.connectionParametersChanged().observe(this, (parameters) ->
+                this.connectionParameters.setText("Connection: " + parameters));
+        this.bleViewModel.integerStreamChanged().observe(this, (throughput) ->
+                this.integerStream.setText("Stream: " + throughput));
     }
 
     @Override
@@ -183,9 +233,16 @@ public class BleActivity extends BaseTemplateActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        this.bleViewModel.setInForeground(true);
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
+        this.bleViewModel.setInForeground(false);
         if (this.isScanning)
             scanLeDevice(false);
         if (isFinishing())
@@ -217,14 +274,28 @@ public class BleActivity extends BaseTemplateActivity {
         }
     }
 
+    private static int profileButton(ConnectionProfile profile) {
+        switch (profile) {
+            case HIGH_THROUGHPUT: return R.id.ble_profile_high_throughput;
+            case LOW_POWER: return R.id.ble_profile_low_power;
+            default: return R.id.ble_profile_low_latency;
+        }
+    }
+
     /**
-     * Update the GUI with new temperature info
+     * Update the GUI with new temperature info, and the range of the samples if there are several
      */
     private void updateTemperature() {
-        this.temperature.setText(String.format(
-                "Temperature: %.1f°C",
-                this.bleViewModel.temperatureChanged().getValue() / 10f)
-        );
+        TimeSeries series = this.bleViewModel.temperatureSeriesChanged().getValue();
+        if (series == null || series.isEmpty()) return;
+        if (series.size() == 1) {
+            this.temperature.setText(String.format("Temperature: %.1f°C", series.getLastValue()));
+        } else {
+            this.temperature.setText(String.format(
+                    "Temperature: %.1f°C (%.1f - %.1f°C, %d samples)",
+                    series.getLastValue(), series.getMin(), series.getMax(), series.size())
+            );
+        }
     }
 
     /**
@@ -9,14 +9,29 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
+import android.view.Display;
+import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
+import android.widget.TextView;
 
-import java.util.Arrays;
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Logger;
 
+import ch.heigvd.iict.sym_labo4.gl.BaseCompassRenderer;
+import ch.heigvd.iict.sym_labo4.gl.FramePacer;
+import ch.heigvd.iict.sym_labo4.gl.GLES20Renderer;
 import ch.heigvd.iict.sym_labo4.gl.OpenGLRenderer;
+import ch.heigvd.iict.sym_labo4.sensors.AdaptiveSamplingController;
+import ch.heigvd.iict.sym_labo4.sensors.OrientationFusion;
+import ch.heigvd.iict.sym_labo4.sensors.RotationChangeDetector;
+import ch.heigvd.iict.sym_labo4.sensors.SensorRecorder;
 
 /**
  * Project: Labo4
@@ -26,15 +41,80 @@ import ch.heigvd.iict.sym_labo4.gl.OpenGLRenderer;
  */
 public class CompassActivity extends AppCompatActivity implements SensorEventListener {
 
+    // Intent extra (boolean) to render with OpenGL ES 2.0 shaders instead of the fixed-function pipeline
+    public static final String EXTRA_USE_GLES20 = "ch.heigvd.iict.sym_labo4.USE_GLES20";
+    // Intent extra (boolean, default true) to render only when the orientation changes, instead of continuously
+    public static final String EXTRA_RENDER_ON_DEMAND = "ch.heigvd.iict.sym_labo4.RENDER_ON_DEMAND";
+    // Intent extra (float, degrees) smallest rotation that triggers a render in on demand mode
+    public static final String EXTRA_RENDER_THRESHOLD = "ch.heigvd.iict.sym_labo4.RENDER_THRESHOLD";
+
+    // Intent extra (float, frames per second, 0 for the display rate) target rate when rendering continuously
+    public static final String EXTRA_TARGET_FPS = "ch.heigvd.iict.sym_labo4.TARGET_FPS";
+
+    // Intent extra (String, one of FILTER_*, FILTER_NONE by default) filtering of the sensor data
+    public static final String EXTRA_FILTER = "ch.heigvd.iict.sym_labo4.FILTER";
+    // Intent extra (float, Hertz) cutoff frequency of the filter
+    public static final String EXTRA_FILTER_CUTOFF = "ch.heigvd.iict.sym_labo4.FILTER_CUTOFF";
+
+    public static final String FILTER_NONE = OrientationFusion.FILTER_NONE;
+    // exponential low-pass of the accelerometer and magnetometer (of the orientation with a rotation vector sensor)
+    public static final String FILTER_LOW_PASS = OrientationFusion.FILTER_LOW_PASS;
+    // gyroscope integration, corrected by the absolute orientation
+    public static final String FILTER_COMPLEMENTARY = OrientationFusion.FILTER_COMPLEMENTARY;
+    // spherical interpolation of the orientation
+    public static final String FILTER_SLERP = OrientationFusion.FILTER_SLERP;
+
+    // Intent extra (boolean, default true) to lower the sensors rate and batch their events while the device is still
+    public static final String EXTRA_ADAPTIVE_SAMPLING = "ch.heigvd.iict.sym_labo4.ADAPTIVE_SAMPLING";
+
+    // Intent extra (String) name of a file of the external files directory the sensor events are
+    // recorded into, to be replayed without a device (see SensorReplay)
+    public static final String EXTRA_RECORD_SENSORS = "ch.heigvd.iict.sym_labo4.RECORD_SENSORS";
+
+    // Intent extra (boolean) to show the frame metrics (p50/p95/p99) over the compass
+    public static final String EXTRA_SHOW_METRICS = "ch.heigvd.iict.sym_labo4.SHOW_METRICS";
+
+    private static final String TAG = CompassActivity.class.getSimpleName();
+
+    private static final float DEFAULT_RENDER_THRESHOLD = 0.5f;
+    private static final float DEFAULT_TARGET_FPS = 60f;
+    private static final long METRICS_REFRESH_MS = 500;
+    private static final float DEFAULT_FILTER_CUTOFF = 2f;
+
     // Opengl
-    private OpenGLRenderer opglr = null;
+    private BaseCompassRenderer opglr = null;
     private GLSurfaceView m3DView = null;
     private SensorManager mSensorManager = null;
-    private Sensor mAccelerometer = null;
-    private Sensor mMagneticField = null;
-    private float[] rotationMatrix = new float[16];
-    private float[] gravity = new float[3];
-    private float[] geomagnetic = new float[3];
+    private OrientationFusion orientationFusion = null;
+    // Sampling rate following the motion of the device, null for a fixed rate
+    private AdaptiveSamplingController samplingController = null;
+    // Sensor events are delivered and processed on their own thread, while the activity is resumed
+    private HandlerThread sensorThread = null;
+    private Handler sensorHandler = null;
+    // Recording of the sensor events, only used on the sensors thread
+    private String recordingName = null;
+    private SensorRecorder sensorRecorder = null;
+    // Batched events are delivered in a burst, the renderer only gets the last orientation
+    private boolean rotationPending = false;
+    private final Runnable publishRotation = this::publishRotation;
+    private final Runnable applySamplingRate = this::applySamplingRate;
+
+    // On demand rendering
+    private boolean renderOnDemand = true;
+    private RotationChangeDetector rotationChangeDetector = null;
+    // Continuous rendering, in sync with the display
+    private FramePacer framePacer = null;
+
+    // Metrics overlay, refreshed periodically when shown
+    private TextView metricsView = null;
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private final Runnable metricsRefresh = new Runnable() {
+        @Override
+        public void run() {
+            metricsView.setText(opglr.getFrameMetrics().summary());
+            metricsHandler.postDelayed(this, METRICS_REFRESH_MS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,64 +127,202 @@ public class CompassActivity extends AppCompatActivity implements SensorEventLis
         // We initiate the view
         setContentView(R.layout.activity_compass);
 
-        // We create the renderer
-        this.opglr = new OpenGLRenderer(getApplicationContext());
-
         // Link to GUI
         this.m3DView = findViewById(R.id.compass_opengl);
+        if (getIntent().getBooleanExtra(EXTRA_SHOW_METRICS, false)) {
+            this.metricsView = findViewById(R.id.compass_metrics);
+            this.metricsView.setVisibility(View.VISIBLE);
+        }
 
-        // Init opengl surface view
+        // We create the renderer, and init opengl surface view accordingly
+        if (getIntent().getBooleanExtra(EXTRA_USE_GLES20, false)) {
+            this.opglr = new GLES20Renderer(getApplicationContext());
+            this.m3DView.setEGLContextClientVersion(2);
+        } else {
+            this.opglr = new OpenGLRenderer(getApplicationContext());
+        }
         this.m3DView.setRenderer(this.opglr);
 
-        // Init sensor manager and sensors
-        this.mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        this.mAccelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        this.mMagneticField = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        // When rendering on demand, frames are requested by the sensors (and once the arrow is loaded),
+        // otherwise they are requested by the frame pacer at the target rate
+        this.m3DView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        this.renderOnDemand = getIntent().getBooleanExtra(EXTRA_RENDER_ON_DEMAND, true);
+        if (this.renderOnDemand) {
+            this.rotationChangeDetector = new RotationChangeDetector(
+                    getIntent().getFloatExtra(EXTRA_RENDER_THRESHOLD, DEFAULT_RENDER_THRESHOLD));
+            this.opglr.setOnModelLoadedListener(this.m3DView::requestRender);
+        } else {
+            this.framePacer = new FramePacer(this.m3DView, activityDisplay(),
+                    getIntent().getFloatExtra(EXTRA_TARGET_FPS, DEFAULT_TARGET_FPS));
+            this.opglr.setFramePacer(this.framePacer);
+        }
 
-        // Fill arrays for future calculation
-        Arrays.fill(rotationMatrix, 0);
-        Arrays.fill(gravity, 0);
-        Arrays.fill(geomagnetic, 0);
+        // Init sensor manager, the best sensors available are chosen
+        this.mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+        this.orientationFusion = new OrientationFusion(this.mSensorManager);
+        String filter = getIntent().getStringExtra(EXTRA_FILTER);
+        if (filter == null) filter = FILTER_NONE;
+        if (!this.orientationFusion.setFilter(filter, getIntent().getFloatExtra(EXTRA_FILTER_CUTOFF, DEFAULT_FILTER_CUTOFF))) {
+            Log.w(TAG, "Unknown filter " + filter + ", sensor data not filtered");
+        }
+        if (getIntent().getBooleanExtra(EXTRA_ADAPTIVE_SAMPLING, true)) {
+            this.samplingController = new AdaptiveSamplingController();
+        }
+        this.recordingName = getIntent().getStringExtra(EXTRA_RECORD_SENSORS);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
+        this.m3DView.onResume();
+        if (this.framePacer != null) {
+            this.framePacer.start();
+        }
+        if (this.metricsView != null) {
+            this.metricsHandler.post(this.metricsRefresh);
+        }
 
-        // Register accelerometer
-        mSensorManager.registerListener(this,
-                mAccelerometer,
-                SensorManager.SENSOR_DELAY_NORMAL);
-        // Register magnetic field
-        mSensorManager.registerListener(this,
-                mMagneticField,
-                SensorManager.SENSOR_DELAY_NORMAL);
+        startSensorThread();
+        // Register rotation vector, or accelerometer and magnetic field
+        if (this.samplingController != null) {
+            this.samplingController.reset();
+            this.orientationFusion.register(this, this.samplingController.getSamplingPeriodUs(),
+                    this.samplingController.getMaxReportLatencyUs(), this.sensorHandler);
+        } else {
+            this.orientationFusion.register(this, SensorManager.SENSOR_DELAY_NORMAL, 0, this.sensorHandler);
+        }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
         // Unregister all sensors when paused
-        mSensorManager.unregisterListener(this);
+        this.orientationFusion.unregister(this);
+        stopSensorThread();
+        if (this.framePacer != null) {
+            this.framePacer.stop();
+        }
+        this.metricsHandler.removeCallbacks(this.metricsRefresh);
+        Log.i(TAG, this.opglr.getFrameMetrics().summary());
+        // Free the GPU buffers before the GL thread releases its context
+        this.m3DView.queueEvent(this.opglr::releaseGlResources);
+        this.m3DView.onPause();
     }
 
+    /*
+     * The view has no display until it is attached to the window, i.e. after the first onResume()
+     */
+    @SuppressWarnings("deprecation")
+    private Display activityDisplay() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return getDisplay();
+        }
+        return getWindowManager().getDefaultDisplay();
+    }
+
+    private void startSensorThread() {
+        // The previous thread may still be finishing its last event, only one may give
+        // rotation matrices to the renderer at a time
+        if (this.sensorThread != null) {
+            try {
+                this.sensorThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.sensorThread = new HandlerThread("CompassSensors", Process.THREAD_PRIORITY_DISPLAY);
+        this.sensorThread.start();
+        this.sensorHandler = new Handler(this.sensorThread.getLooper());
+        this.rotationPending = false;
+        if (this.recordingName != null) {
+            File file = new File(getExternalFilesDir(null), this.recordingName);
+            this.sensorHandler.post(() -> startRecording(file));
+        }
+    }
+
+    private void stopSensorThread() {
+        // The runnables posted by the last events are dropped, no more events will come
+        this.sensorHandler.removeCallbacksAndMessages(null);
+        this.sensorHandler.post(this::stopRecording);
+        this.sensorThread.quitSafely();
+    }
+
+    private void startRecording(File file) {
+        try {
+            this.sensorRecorder = new SensorRecorder(file, this.orientationFusion.getSource(),
+                    this.orientationFusion.usesGyroscope());
+            Log.i(TAG, "Recording sensor events into " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not record sensor events into " + file, e);
+        }
+    }
+
+    private void stopRecording() {
+        if (this.sensorRecorder == null) return;
+        try {
+            this.sensorRecorder.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write the sensor recording", e);
+        }
+        this.sensorRecorder = null;
+    }
 
+    /*
+     * Called on the sensors thread
+     */
     @Override
     public void onSensorChanged(SensorEvent sensorEvent) {
-        // Update corresponding sensor data
-        if (sensorEvent.sensor.getName().equals(mAccelerometer.getName())) {
-            gravity = sensorEvent.values;
-        } else if (sensorEvent.sensor.getName().equals(mMagneticField.getName())) {
-            geomagnetic = sensorEvent.values;
-        }
-
-        // Calculate rotation matrix with updated data
-        SensorManager.getRotationMatrix(
-                opglr.swapRotMatrix(rotationMatrix),
-                null,
-                gravity,
-                geomagnetic
-        );
+        if (this.sensorRecorder != null) {
+            try {
+                this.sensorRecorder.record(sensorEvent.sensor.getType(), sensorEvent.values,
+                        sensorEvent.values.length, sensorEvent.timestamp);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not record sensor events", e);
+                stopRecording();
+            }
+        }
+
+        // Update the rotation matrix with the new data, once all inputs are fresh
+        if (!this.orientationFusion.onSensorChanged(sensorEvent)) {
+            return;
+        }
+
+        if (this.samplingController != null) {
+            boolean batching = !this.samplingController.isActive();
+            if (this.samplingController.update(this.orientationFusion.getRotationMatrix(),
+                    this.orientationFusion.getTimestamp())) {
+                // not while the listener is being called, the rest of a burst would be lost
+                this.sensorHandler.post(this.applySamplingRate);
+            }
+            if (batching) {
+                // the events of a burst are all delivered before the posted runnable runs
+                if (!this.rotationPending) {
+                    this.rotationPending = true;
+                    this.sensorHandler.post(this.publishRotation);
+                }
+                return;
+            }
+        }
+        publishRotation();
+    }
+
+    private void publishRotation() {
+        this.rotationPending = false;
+        float[] rotationMatrix = this.orientationFusion.getRotationMatrix();
+
+        // Give it to the renderer, skipping changes too small to be seen
+        if (!this.renderOnDemand) {
+            opglr.setRotMatrix(rotationMatrix, this.orientationFusion.getTimestamp());
+        } else if (this.rotationChangeDetector.hasChanged(rotationMatrix)) {
+            opglr.setRotMatrix(rotationMatrix, this.orientationFusion.getTimestamp());
+            this.m3DView.requestRender();
+        }
+    }
+
+    private void applySamplingRate() {
+        this.orientationFusion.setSamplingRate(this, this.samplingController.getSamplingPeriodUs(),
+                this.samplingController.getMaxReportLatencyUs());
+        Log.d(TAG, "Sampling period: " + this.samplingController.getSamplingPeriodUs() + " us");
     }
 
     @Override
@@ -0,0 +1,125 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import java.util.Locale;
+
+/**
+ * Project: Labo4
+ * Parameters negotiated for the current connection, immutable. The values not reported
+ * (yet) by Android are UNKNOWN, e.g. the connection interval before Android 8
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class ConnectionParameters {
+
+    public static final int UNKNOWN = -1;
+
+    // ATT MTU without negotiation and the largest one Android accepts
+    public static final int DEFAULT_MTU = 23;
+    public static final int MAX_MTU = 517;
+
+    // values of the PHY reported by Android
+    public static final int PHY_LE_1M = 1;
+    public static final int PHY_LE_2M = 2;
+    public static final int PHY_LE_CODED = 3;
+
+    public static final ConnectionParameters DEFAULT = new ConnectionParameters(null, DEFAULT_MTU,
+            UNKNOWN, UNKNOWN, UNKNOWN, PHY_LE_1M, PHY_LE_1M);
+
+    private final ConnectionProfile profile;
+    private final int mtu;
+    // as given by Android: interval in units of 1.25 ms, latency in connection events,
+    // supervision timeout in units of 10 ms
+    private final int interval;
+    private final int latency;
+    private final int supervisionTimeout;
+    private final int txPhy;
+    private final int rxPhy;
+
+    private ConnectionParameters(ConnectionProfile profile, int mtu, int interval, int latency,
+                                 int supervisionTimeout, int txPhy, int rxPhy) {
+        this.profile = profile;
+        this.mtu = mtu;
+        this.interval = interval;
+        this.latency = latency;
+        this.supervisionTimeout = supervisionTimeout;
+        this.txPhy = txPhy;
+        this.rxPhy = rxPhy;
+    }
+
+    public ConnectionParameters withProfile(ConnectionProfile profile) {
+        return new ConnectionParameters(profile, mtu, interval, latency, supervisionTimeout, txPhy, rxPhy);
+    }
+
+    public ConnectionParameters withMtu(int mtu) {
+        return new ConnectionParameters(profile, mtu, interval, latency, supervisionTimeout, txPhy, rxPhy);
+    }
+
+    public ConnectionParameters withConnectionInterval(int interval, int latency, int supervisionTimeout) {
+        return new ConnectionParameters(profile, mtu, interval, latency, supervisionTimeout, txPhy, rxPhy);
+    }
+
+    public ConnectionParameters withPhy(int txPhy, int rxPhy) {
+        return new ConnectionParameters(profile, mtu, interval, latency, supervisionTimeout, txPhy, rxPhy);
+    }
+
+    /**
+     * @return the profile requested, null if none was
+     */
+    public ConnectionProfile getProfile() {
+        return profile;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * @return the connection interval in ms, or UNKNOWN
+     */
+    public float getIntervalMs() {
+        return interval != UNKNOWN ? interval * 1.25f : UNKNOWN;
+    }
+
+    /**
+     * @return the number of connection events the peripheral may skip, or UNKNOWN
+     */
+    public int getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the supervision timeout in ms, or UNKNOWN
+     */
+    public int getSupervisionTimeoutMs() {
+        return supervisionTimeout != UNKNOWN ? supervisionTimeout * 10 : UNKNOWN;
+    }
+
+    public int getTxPhy() {
+        return txPhy;
+    }
+
+    public int getRxPhy() {
+        return rxPhy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(profile != null ? profile.name().toLowerCase(Locale.US) : "default")
+                .append(": MTU ").append(mtu);
+        if (interval != UNKNOWN) {
+            s.append(String.format(Locale.US, ", interval %.2f ms, latency %d, timeout %d ms",
+                    getIntervalMs(), latency, getSupervisionTimeoutMs()));
+        }
+        s.append(", PHY ").append(phyName(txPhy)).append('/').append(phyName(rxPhy));
+        return s.toString();
+    }
+
+    private static String phyName(int phy) {
+        switch (phy) {
+            case PHY_LE_1M: return "1M";
+            case PHY_LE_2M: return "2M";
+            case PHY_LE_CODED: return "Coded";
+            default: return "?";
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import no.nordicsemi.android.ble.ConnectionPriorityRequest;
+import no.nordicsemi.android.ble.PhyRequest;
+
+/**
+ * Project: Labo4
+ * Link parameters requested once connected (see BleOperationsViewModel.setConnectionProfile()).
+ * They are only preferences: the phone or the peripheral may refuse them or settle for less,
+ * the negotiated values are published as ConnectionParameters
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public enum ConnectionProfile {
+
+    /**
+     * Shortest connection interval (7.5 - 15 ms), for the interactive operations
+     */
+    LOW_LATENCY(ConnectionParameters.DEFAULT_MTU, ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH,
+            PhyRequest.PHY_LE_1M_MASK | PhyRequest.PHY_LE_2M_MASK),
+
+    /**
+     * Largest MTU, shortest connection interval and 2M PHY, e.g. to stream integers
+     */
+    HIGH_THROUGHPUT(ConnectionParameters.MAX_MTU, ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH,
+            PhyRequest.PHY_LE_1M_MASK | PhyRequest.PHY_LE_2M_MASK),
+
+    /**
+     * Long connection interval (100 - 125 ms) with slave latency, the PHY is left as it is
+     */
+    LOW_POWER(ConnectionParameters.DEFAULT_MTU, ConnectionPriorityRequest.CONNECTION_PRIORITY_LOW_POWER, 0);
+
+    private final int mtu;
+    private final int connectionPriority;
+    private final int phyMask;
+
+    ConnectionProfile(int mtu, int connectionPriority, int phyMask) {
+        this.mtu = mtu;
+        this.connectionPriority = connectionPriority;
+        this.phyMask = phyMask;
+    }
+
+    /**
+     * @return the MTU to request, DEFAULT_MTU to keep the default one
+     */
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * @return one of the ConnectionPriorityRequest.CONNECTION_PRIORITY_* constants
+     */
+    public int getConnectionPriority() {
+        return connectionPriority;
+    }
+
+    /**
+     * @return the preferred PHYs (PhyRequest.PHY_LE_*_MASK), 0 for no preference
+     */
+    public int getPhyMask() {
+        return phyMask;
+    }
+}
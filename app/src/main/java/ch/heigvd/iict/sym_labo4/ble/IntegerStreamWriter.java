@@ -0,0 +1,174 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+/**
+ * Project: Labo4
+ * Streams a sequence of integers to a characteristic, as 32-bit little endian values.
+ * Several values can be coalesced into one packet (up to the payload allowed by the MTU,
+ * when the peripheral accepts them). Flow control: at most maxInFlight packets are handed
+ * to the transport at once, the next ones are only encoded when a packet completes, so the
+ * GATT queue never grows. Packets are encoded into a single reused buffer, the transport
+ * must copy it (the Nordic requests do). Each packet carries the number of its stream, so
+ * that the completions of a cancelled stream cannot be mistaken for those of the next one.
+ * Not thread-safe: to be used from the thread of the BLE callbacks (the main thread)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class IntegerStreamWriter {
+
+    /**
+     * Sends the packets, e.g. as Write Without Response requests
+     */
+    public interface Transport {
+        /**
+         * Enqueues a packet, onPacketDone(stream, ...) must be called once it has been sent or has failed
+         * @param packet reused by the writer once this method returns
+         * @param stream number of the stream of the packet, to be given back to onPacketDone()
+         */
+        void send(byte[] packet, int length, int stream);
+    }
+
+    public interface Listener {
+        /**
+         * Called at most every REPORT_INTERVAL_NS while the stream is running,
+         * and once when it is over (getThroughput().isFinished())
+         */
+        void onProgress(WriteThroughput throughput);
+    }
+
+    public static final long REPORT_INTERVAL_NS = 500_000_000L;
+
+    // the payload of a packet is at most MTU - 3 (ATT header)
+    private static final int ATT_HEADER_SIZE = 3;
+
+    private final Transport transport;
+    private final Listener listener;
+    private final int maxInFlight;
+
+    private byte[] buffer = new byte[SymCodecs.INTEGER_SIZE];
+    private int[] values = null;
+    private int valuesPerPacket = 1;
+    // next value to encode, number of values acknowledged
+    private int next = 0;
+    private int written = 0;
+    private int inFlight = 0;
+    private int packets = 0;
+    private long bytes = 0;
+    private int failures = 0;
+    private long startNs = 0;
+    private long lastReportNs = 0;
+    private boolean running = false;
+    // incremented by each start(), the completions of the previous streams are ignored
+    private int stream = 0;
+
+    // values of the packets in flight, in order
+    private final int[] inFlightValues;
+    private int inFlightHead = 0;
+
+    public IntegerStreamWriter(Transport transport, Listener listener, int maxInFlight) {
+        this.transport = transport;
+        this.listener = listener;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlightValues = new int[this.maxInFlight];
+    }
+
+    /**
+     * @return how many values fit in a packet for the given MTU
+     */
+    public static int valuesPerPacket(int mtu) {
+        return Math.max(1, (mtu - ATT_HEADER_SIZE) / SymCodecs.INTEGER_SIZE);
+    }
+
+    /**
+     * Starts streaming the values, a stream already running is cancelled
+     * @param values must not be modified until the stream is over
+     * @param valuesPerPacket 1 to send each value in its own write
+     */
+    public void start(int[] values, int valuesPerPacket) {
+        if (running) cancel();
+        this.values = values;
+        this.valuesPerPacket = Math.max(1, valuesPerPacket);
+        if (buffer.length < this.valuesPerPacket * SymCodecs.INTEGER_SIZE) {
+            buffer = new byte[this.valuesPerPacket * SymCodecs.INTEGER_SIZE];
+        }
+        stream++;
+        next = written = inFlight = packets = failures = inFlightHead = 0;
+        bytes = 0;
+        startNs = lastReportNs = System.nanoTime();
+        running = true;
+        pump();
+    }
+
+    /**
+     * Stops sending new packets, the ones in flight are not waited for
+     */
+    public void cancel() {
+        if (!running) return;
+        finish();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * To be called by the transport for each packet, in order
+     * @param stream the number given with the packet to Transport.send()
+     */
+    public void onPacketDone(int stream, boolean success) {
+        // e.g. a packet of a cancelled stream, completing after the next one has started
+        if (stream != this.stream || !running || inFlight == 0) return;
+        int count = inFlightValues[inFlightHead];
+        inFlightHead = (inFlightHead + 1) % maxInFlight;
+        inFlight--;
+        if (success) {
+            written += count;
+            packets++;
+            bytes += (long) count * SymCodecs.INTEGER_SIZE;
+        } else {
+            // most likely disconnected, the following writes would fail too
+            failures++;
+            finish();
+            return;
+        }
+
+        if (next == values.length && inFlight == 0) {
+            finish();
+            return;
+        }
+        long now = System.nanoTime();
+        if (listener != null && now - lastReportNs >= REPORT_INTERVAL_NS) {
+            lastReportNs = now;
+            listener.onProgress(getThroughput());
+        }
+        pump();
+    }
+
+    public WriteThroughput getThroughput() {
+        int total = values != null ? values.length : 0;
+        long elapsed = (running ? System.nanoTime() : lastReportNs) - startNs;
+        return new WriteThroughput(written, total, packets, bytes, failures, elapsed, !running && values != null);
+    }
+
+    private void pump() {
+        while (running && inFlight < maxInFlight && next < values.length) {
+            int count = Math.min(valuesPerPacket, values.length - next);
+            int length = 0;
+            for (int i = 0; i < count; ++i) {
+                length = SymCodecs.encodeInteger(values[next + i], buffer, length);
+            }
+            next += count;
+            inFlightValues[(inFlightHead + inFlight) % maxInFlight] = count;
+            inFlight++;
+            transport.send(buffer, length, stream);
+        }
+        if (running && next == values.length && inFlight == 0) {
+            // empty stream
+            finish();
+        }
+    }
+
+    private void finish() {
+        running = false;
+        lastReportNs = System.nanoTime();
+        if (listener != null) listener.onProgress(getThroughput());
+    }
+}
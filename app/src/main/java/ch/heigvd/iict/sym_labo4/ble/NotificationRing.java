@@ -0,0 +1,111 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Project: Labo4
+ * Bounded, lock-free, single-producer / single-consumer queue of (timestamp, characteristic, value)
+ * records, stored in preallocated primitive arrays: nothing is allocated once created.
+ * The producer (the thread of the GATT callbacks) calls offer(), the consumer (e.g. the main
+ * thread) calls drain(). When the consumer is too slow the new records are dropped and counted,
+ * the producer never waits.
+ * The positions only grow, the records are published with an ordered store of the head
+ * (release) and freed with an ordered store of the tail
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class NotificationRing {
+
+    /**
+     * Receives the records, must not keep a reference to anything
+     */
+    public interface RecordHandler {
+        void onRecord(long timestamp, int characteristic, int value);
+    }
+
+    private final long[] timestamps;
+    private final int[] characteristics;
+    private final int[] values;
+    private final int mask;
+
+    // next position written by the producer and next one read by the consumer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // producer only: cached tail, to avoid reading the consumer's position at each offer
+    private long tailCache = 0;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of 2
+     */
+    public NotificationRing(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.timestamps = new long[size];
+        this.characteristics = new int[size];
+        this.values = new int[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Producer side
+     * @return false if the ring is full, the record is dropped
+     */
+    public boolean offer(long timestamp, int characteristic, int value) {
+        long position = head.get();
+        if (position - tailCache >= timestamps.length) {
+            tailCache = tail.get();
+            if (position - tailCache >= timestamps.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        int i = (int) position & mask;
+        timestamps[i] = timestamp;
+        characteristics[i] = characteristic;
+        values[i] = value;
+        head.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side: gives the records available, oldest first
+     * @return the number of records drained
+     */
+    public int drain(RecordHandler handler) {
+        return drain(handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Consumer side: gives at most maxRecords records, oldest first
+     * @return the number of records drained
+     */
+    public int drain(RecordHandler handler, int maxRecords) {
+        long position = tail.get();
+        long available = Math.min(head.get() - position, maxRecords);
+        for (long n = 0; n < available; ++n) {
+            int i = (int) (position + n) & mask;
+            handler.onRecord(timestamps[i], characteristics[i], values[i]);
+        }
+        tail.lazySet(position + available);
+        return (int) available;
+    }
+
+    /**
+     * @return the number of records waiting, approximate if called by the producer
+     */
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    /**
+     * @return the number of records dropped because the ring was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
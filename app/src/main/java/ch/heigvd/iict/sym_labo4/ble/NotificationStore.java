@@ -0,0 +1,193 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import java.util.Arrays;
+
+/**
+ * Project: Labo4
+ * Consumer of the NotificationRing, keeps for each characteristic:
+ *  - a downsampled view for the UI: min, max, mean and last value over buckets of a fixed
+ *    duration, the most recent ones only (see snapshot())
+ *  - the last value received
+ * and the full resolution records, until they are drained (see drainHistory()), the oldest
+ * ones are overwritten if they are not drained in time.
+ * Everything is preallocated. Not thread-safe: to be used from the consumer thread only
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class NotificationStore implements NotificationRing.RecordHandler {
+
+    // identifiers of the characteristics in the records
+    public static final int TEMPERATURE = 0;
+    public static final int BUTTON_CLICKS = 1;
+    public static final int CURRENT_TIME = 2;
+    public static final int CHARACTERISTICS = 3;
+
+    // aggregation of the values of a bucket in the snapshots
+    public static final int MIN = 0;
+    public static final int MAX = 1;
+    public static final int MEAN = 2;
+    public static final int LAST = 3;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long bucketMs;
+    private final int buckets;
+    // per characteristic, per bucket (indexed by its number modulo buckets)
+    private final long[][] bucketNumbers = new long[CHARACTERISTICS][];
+    private final int[][] mins = new int[CHARACTERISTICS][];
+    private final int[][] maxs = new int[CHARACTERISTICS][];
+    private final int[][] lasts = new int[CHARACTERISTICS][];
+    private final long[][] sums = new long[CHARACTERISTICS][];
+    private final int[][] counts = new int[CHARACTERISTICS][];
+
+    private final long[] lastTimestamps = new long[CHARACTERISTICS];
+    private final int[] lastValues = new int[CHARACTERISTICS];
+    private final long[] received = new long[CHARACTERISTICS];
+
+    // full resolution history, a ring overwriting the oldest records
+    private final long[] historyTimestamps;
+    private final int[] historyCharacteristics;
+    private final int[] historyValues;
+    private int historyHead = 0;
+    private int historySize = 0;
+    private long historyLost = 0;
+
+    /**
+     * @param bucketMs duration of the buckets of the snapshots
+     * @param buckets number of buckets kept, per characteristic
+     * @param historyCapacity records kept at full resolution until drained
+     */
+    public NotificationStore(long bucketMs, int buckets, int historyCapacity) {
+        if (bucketMs <= 0 || buckets <= 0 || historyCapacity <= 0) throw new IllegalArgumentException();
+        this.bucketMs = bucketMs;
+        this.buckets = buckets;
+        for (int c = 0; c < CHARACTERISTICS; ++c) {
+            bucketNumbers[c] = new long[buckets];
+            Arrays.fill(bucketNumbers[c], EMPTY);
+            mins[c] = new int[buckets];
+            maxs[c] = new int[buckets];
+            lasts[c] = new int[buckets];
+            sums[c] = new long[buckets];
+            counts[c] = new int[buckets];
+        }
+        Arrays.fill(lastTimestamps, EMPTY);
+        this.historyTimestamps = new long[historyCapacity];
+        this.historyCharacteristics = new int[historyCapacity];
+        this.historyValues = new int[historyCapacity];
+    }
+
+    /**
+     * Adds a record, the unknown characteristics and negative timestamps are ignored
+     * @param timestamp in ms, e.g. System.currentTimeMillis()
+     */
+    @Override
+    public void onRecord(long timestamp, int characteristic, int value) {
+        if (characteristic < 0 || characteristic >= CHARACTERISTICS || timestamp < 0) return;
+
+        long bucket = timestamp / bucketMs;
+        int slot = (int) (bucket % buckets);
+        long[] numbers = bucketNumbers[characteristic];
+        if (numbers[slot] != bucket) {
+            // older records (e.g. out of order) than the bucket kept are only in the history
+            if (numbers[slot] < bucket) {
+                numbers[slot] = bucket;
+                mins[characteristic][slot] = value;
+                maxs[characteristic][slot] = value;
+                lasts[characteristic][slot] = value;
+                sums[characteristic][slot] = value;
+                counts[characteristic][slot] = 1;
+            }
+        } else {
+            mins[characteristic][slot] = Math.min(mins[characteristic][slot], value);
+            maxs[characteristic][slot] = Math.max(maxs[characteristic][slot], value);
+            lasts[characteristic][slot] = value;
+            sums[characteristic][slot] += value;
+            counts[characteristic][slot]++;
+        }
+
+        if (lastTimestamps[characteristic] == EMPTY || timestamp >= lastTimestamps[characteristic]) {
+            lastTimestamps[characteristic] = timestamp;
+            lastValues[characteristic] = value;
+        }
+        received[characteristic]++;
+
+        int i = historyHead + historySize;
+        if (i >= historyTimestamps.length) i -= historyTimestamps.length;
+        historyTimestamps[i] = timestamp;
+        historyCharacteristics[i] = characteristic;
+        historyValues[i] = value;
+        if (historySize < historyTimestamps.length) {
+            historySize++;
+        } else {
+            historyHead = i + 1 == historyTimestamps.length ? 0 : i + 1;
+            historyLost++;
+        }
+    }
+
+    /**
+     * @return true if a value of the characteristic has been received
+     */
+    public boolean hasValue(int characteristic) {
+        return lastTimestamps[characteristic] != EMPTY;
+    }
+
+    public int getLastValue(int characteristic) {
+        return lastValues[characteristic];
+    }
+
+    public long getLastTimestamp(int characteristic) {
+        return lastTimestamps[characteristic];
+    }
+
+    /**
+     * @return the number of values received for the characteristic
+     */
+    public long getReceived(int characteristic) {
+        return received[characteristic];
+    }
+
+    /**
+     * @return the downsampled values of the characteristic, one per non-empty bucket of the last
+     * buckets * bucketMs before its last value, timestamped with the start of the bucket
+     * @param aggregate MIN, MAX, MEAN or LAST
+     */
+    public TimeSeries snapshot(int characteristic, int aggregate) {
+        TimeSeries series = new TimeSeries(buckets);
+        if (!hasValue(characteristic)) return series;
+        long newest = lastTimestamps[characteristic] / bucketMs;
+        for (long bucket = Math.max(0, newest - buckets + 1); bucket <= newest; ++bucket) {
+            int slot = (int) (bucket % buckets);
+            if (bucketNumbers[characteristic][slot] != bucket) continue;
+            float value;
+            switch (aggregate) {
+                case MIN: value = mins[characteristic][slot]; break;
+                case MAX: value = maxs[characteristic][slot]; break;
+                case MEAN: value = sums[characteristic][slot] / (float) counts[characteristic][slot]; break;
+                default: value = lasts[characteristic][slot]; break;
+            }
+            series.add(bucket * bucketMs, value);
+        }
+        return series;
+    }
+
+    /**
+     * Gives the full resolution records received since the last drain, oldest first
+     * @return the number of records drained
+     */
+    public int drainHistory(NotificationRing.RecordHandler handler) {
+        int drained = historySize;
+        for (int n = 0; n < drained; ++n) {
+            int i = historyHead + n;
+            if (i >= historyTimestamps.length) i -= historyTimestamps.length;
+            handler.onRecord(historyTimestamps[i], historyCharacteristics[i], historyValues[i]);
+        }
+        historyHead = historySize = 0;
+        return drained;
+    }
+
+    /**
+     * @return the number of records overwritten before being drained
+     */
+    public long getHistoryLost() {
+        return historyLost;
+    }
+}
@@ -0,0 +1,122 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Project: Labo4
+ * Triggers a sampling (e.g. a characteristic read) at a fixed rate on a Handler. The deadlines
+ * are absolute (start + n * period), so the delays of the message queue do not accumulate,
+ * and the ticks missed while paused or late are skipped instead of being run in a burst.
+ * A tick is also skipped while the previous sample is still pending, so a slow link is
+ * never given more than one request at a time.
+ * To be used from the thread of the handler (the main thread)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class PeriodicSampler {
+
+    public interface Sampler {
+        /**
+         * Starts a sampling, sampleDone() must be called once it is over
+         * @return false if it could not be started (e.g. not connected)
+         */
+        boolean sample();
+    }
+
+    private final Handler handler;
+    private final Sampler sampler;
+    private final Runnable tick = this::tick;
+
+    private long periodMs = 0;
+    private long nextTick = 0;
+    private boolean started = false;
+    private boolean paused = false;
+    private boolean pending = false;
+    private long skippedTicks = 0;
+
+    public PeriodicSampler(Handler handler, Sampler sampler) {
+        this.handler = handler;
+        this.sampler = sampler;
+    }
+
+    /**
+     * Starts (or restarts with a new period) the sampling, a first sample is taken now
+     * if not paused. A sample still pending from before is not waited for
+     */
+    public void start(long periodMs) {
+        if (periodMs <= 0) throw new IllegalArgumentException("Invalid period: " + periodMs);
+        handler.removeCallbacks(tick);
+        this.periodMs = periodMs;
+        this.started = true;
+        this.pending = false;
+        this.nextTick = SystemClock.uptimeMillis();
+        if (!paused) handler.postAtTime(tick, nextTick);
+    }
+
+    /**
+     * Stops the sampling, a sample still pending is forgotten (e.g. its request was
+     * dropped with the connection), so that it cannot block the next start()
+     */
+    public void stop() {
+        started = false;
+        pending = false;
+        handler.removeCallbacks(tick);
+    }
+
+    /**
+     * Suspends the sampling without forgetting the period, e.g. while disconnected or in background
+     */
+    public void pause() {
+        paused = true;
+        handler.removeCallbacks(tick);
+    }
+
+    /**
+     * Resumes the sampling, a sample is taken now if the last one is older than the period
+     */
+    public void resume() {
+        if (!paused) return;
+        paused = false;
+        if (!started) return;
+        nextTick = Math.max(nextTick, SystemClock.uptimeMillis());
+        handler.postAtTime(tick, nextTick);
+    }
+
+    /**
+     * To be called when the sampling is over, successfully or not
+     */
+    public void sampleDone() {
+        pending = false;
+    }
+
+    public boolean isRunning() {
+        return started && !paused;
+    }
+
+    public long getPeriodMs() {
+        return periodMs;
+    }
+
+    /**
+     * @return the number of ticks skipped because the previous sample was still pending
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    private void tick() {
+        if (!started || paused) return;
+        if (pending) {
+            skippedTicks++;
+        } else {
+            pending = sampler.sample();
+        }
+        // next deadline on the grid of the period, after now
+        long now = SystemClock.uptimeMillis();
+        nextTick += periodMs;
+        if (nextTick <= now) {
+            nextTick += ((now - nextTick) / periodMs + 1) * periodMs;
+        }
+        handler.postAtTime(tick, nextTick);
+    }
+}
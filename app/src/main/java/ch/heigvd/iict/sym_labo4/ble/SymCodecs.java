@@ -0,0 +1,126 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import androidx.annotation.RequiresApi;
+
+import java.time.LocalDateTime;
+
+/**
+ * Project: Labo4
+ * Encoding and decoding of the values of the SYM Pixl characteristics (integer, temperature,
+ * button clicks) and of the standard Current Time characteristic (0x2A2B).
+ * Pure Java, working on byte arrays, it can also be used outside of Android (see the benchmarks)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class SymCodecs {
+
+    // returned by the decoders when the value is too short
+    public static final int INVALID = -1;
+
+    public static final int INTEGER_SIZE = 4;
+    public static final int CURRENT_TIME_SIZE = 10;
+
+    // adjust reason of the Current Time: manual time update and external reference time update
+    private static final byte ADJUST_REASON = 0x03;
+
+    // 2000-01-01 00:00:00, in seconds since 1970-01-01
+    public static final long EPOCH_2000 = 946684800L;
+
+    private SymCodecs() { }
+
+    /**
+     * Writes the value as a 32-bit little endian integer
+     * @return the offset after the value
+     */
+    public static int encodeInteger(int value, byte[] out, int offset) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >> 8);
+        out[offset + 2] = (byte) (value >> 16);
+        out[offset + 3] = (byte) (value >> 24);
+        return offset + INTEGER_SIZE;
+    }
+
+    /**
+     * @return the temperature (unsigned 16-bit little endian), or INVALID
+     */
+    public static int decodeTemperature(byte[] value) {
+        if (value == null || value.length < 2) return INVALID;
+        return (value[0] & 0xFF) | (value[1] & 0xFF) << 8;
+    }
+
+    /**
+     * @return the number of clicks (unsigned 8-bit), or INVALID
+     */
+    public static int decodeButtonClicks(byte[] value) {
+        if (value == null || value.length < 1) return INVALID;
+        return value[0] & 0xFF;
+    }
+
+    /**
+     * @return the date and time of a Current Time value (the day of the week and the
+     * fractions of a second are ignored), or null if it is too short or invalid
+     */
+    @RequiresApi(26)
+    public static LocalDateTime decodeCurrentTime(byte[] value) {
+        if (value == null || value.length < 7) return null;
+        int year = (value[0] & 0xFF) | (value[1] & 0xFF) << 8;
+        int month = value[2] & 0xFF;
+        int day = value[3] & 0xFF;
+        int hour = value[4] & 0xFF;
+        int minutes = value[5] & 0xFF;
+        int seconds = value[6] & 0xFF;
+        try {
+            return LocalDateTime.of(year, month, day, hour, minutes, seconds);
+        } catch (RuntimeException e) {
+            // e.g. 0 for an unknown month or day
+            return null;
+        }
+    }
+
+    /**
+     * Same as decodeCurrentTime(), without allocation and on any API level
+     * @return the date and time, in seconds since 2000-01-01 00:00:00 (fits in an int until 2068),
+     * or INVALID if it is too short, invalid or before 2000
+     */
+    public static int decodeCurrentTimeSeconds(byte[] value) {
+        if (value == null || value.length < 7) return INVALID;
+        int year = (value[0] & 0xFF) | (value[1] & 0xFF) << 8;
+        int month = value[2] & 0xFF;
+        int day = value[3] & 0xFF;
+        int hour = value[4] & 0xFF;
+        int minutes = value[5] & 0xFF;
+        int seconds = value[6] & 0xFF;
+        if (year < 2000 || year > 2067 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour > 23 || minutes > 59 || seconds > 59) {
+            return INVALID;
+        }
+        // days since 1970-01-01 of the proleptic Gregorian calendar, with the year starting in March
+        int y = month <= 2 ? year - 1 : year;
+        int yearOfEra = y % 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = (y / 400) * 146097L + dayOfEra - 719468;
+        return (int) (days * 86400 + hour * 3600 + minutes * 60 + seconds - EPOCH_2000);
+    }
+
+    /**
+     * Writes the date and time as a Current Time value (CURRENT_TIME_SIZE bytes)
+     * @return the offset after the value
+     */
+    @RequiresApi(26)
+    public static int encodeCurrentTime(LocalDateTime time, byte[] out, int offset) {
+        int year = time.getYear();
+        out[offset] = (byte) year;
+        out[offset + 1] = (byte) (year >> 8);
+        out[offset + 2] = (byte) time.getMonthValue();
+        out[offset + 3] = (byte) time.getDayOfMonth();
+        out[offset + 4] = (byte) time.getHour();
+        out[offset + 5] = (byte) time.getMinute();
+        out[offset + 6] = (byte) time.getSecond();
+        out[offset + 7] = (byte) time.getDayOfWeek().getValue();
+        // fractions of a second (1/256), not sent
+        out[offset + 8] = 0;
+        out[offset + 9] = ADJUST_REASON;
+        return offset + CURRENT_TIME_SIZE;
+    }
+
+}
@@ -0,0 +1,237 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Project: Labo4
+ * Append-only log of (timestamp, characteristic, value) records, e.g. the values received from
+ * the SYM Pixl, in segment files of a directory (see TelemetryReader):
+ *  - header: magic "SYMT", version, timestamp of the first record (ms), little endian
+ *  - records of RECORD_SIZE bytes: timestamp relative to the header (ms, int),
+ *    characteristic (unsigned byte), value (int)
+ * The timestamps never decrease within a segment, so they can be binary searched: a new segment
+ * is started when the clock goes back, or when a segment reaches its maximum size. Only the
+ * last maxSegments segments are kept.
+ * append() only puts the record in a NotificationRing, and never blocks: a background thread
+ * drains it into a buffer written with FileChannel writes, when full or FLUSH_DELAY_NS after its
+ * first record. The thread is parked without timeout while there is nothing to write, and woken
+ * up by every append(): the ring positions are published with ordered stores only, so the
+ * producer cannot tell reliably whether the writer has seen the ring empty (unparking a running
+ * thread only sets its permit).
+ * append() must always be called from the same thread (single producer)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class TelemetryLog implements Closeable {
+
+    public static final String EXTENSION = ".symt";
+    static final String PREFIX = "telemetry-";
+
+    // "SYMT"
+    static final int MAGIC = 0x544d5953;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 4 + 4 + 8;
+    static final int RECORD_SIZE = 4 + 1 + 4;
+
+    private static final int RING_CAPACITY = 16 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // longest time a record stays in the buffer before being written
+    private static final long FLUSH_DELAY_NS = 200000000L;
+
+    private final File directory;
+    private final long segmentSize;
+    private final int maxSegments;
+
+    private final NotificationRing ring = new NotificationRing(RING_CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+
+    // writer thread
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final NotificationRing.RecordHandler encoder = this::encode;
+    private FileChannel channel = null;
+    private int sequence = 0;
+    private long segmentBase = 0;
+    private long segmentLast = 0;
+    private long segmentBytes = 0;
+    // when the buffered bytes must be written at the latest
+    private long flushDeadline = 0;
+
+    /**
+     * Starts the writer thread, the directory is created if needed and a new segment is started
+     * at the first record
+     * @param segmentSize maximum size of a segment file, in bytes
+     * @param maxSegments number of segments kept, the oldest ones are deleted
+     */
+    public TelemetryLog(File directory, long segmentSize, int maxSegments) {
+        if (segmentSize < HEADER_SIZE + RECORD_SIZE || maxSegments <= 0) throw new IllegalArgumentException();
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.writer = new Thread(this::run, "telemetry-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Logs a record, without blocking
+     * @param characteristic between 0 and 255
+     * @return false if the record is dropped: the writer thread is late or has failed, or the log is closed
+     */
+    public boolean append(long timestamp, int characteristic, int value) {
+        if (closed || failure != null) return false;
+        if (!ring.offer(timestamp, characteristic, value)) return false;
+        // unconditionally: a stale tail could hide that the writer has found the ring empty
+        LockSupport.unpark(writer);
+        return true;
+    }
+
+    /**
+     * @return the number of records dropped because the writer thread was late
+     */
+    public long getDropped() {
+        return ring.getDropped();
+    }
+
+    /**
+     * @return the error that stopped the writer thread, or null
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Writes the records appended so far and stops the writer thread
+     * @throws IOException if the writer thread has failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void run() {
+        try {
+            sequence = lastSequence(directory);
+            while (!closed && failure == null) {
+                if (ring.drain(encoder) > 0) continue;
+                if (buffer.position() == 0) {
+                    // nothing to write, until the next append() or close()
+                    LockSupport.park(this);
+                    continue;
+                }
+                long wait = flushDeadline - System.nanoTime();
+                if (wait <= 0) {
+                    flush();
+                } else {
+                    LockSupport.parkNanos(this, wait);
+                }
+            }
+            ring.drain(encoder);
+            flush();
+        } catch (IOException e) {
+            if (failure == null) failure = e;
+        } finally {
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+    }
+
+    private void encode(long timestamp, int characteristic, int value) {
+        if (failure != null) return;
+        if (buffer.position() == 0) flushDeadline = System.nanoTime() + FLUSH_DELAY_NS;
+        try {
+            if (channel == null || segmentBytes + RECORD_SIZE > segmentSize
+                    || timestamp < segmentLast || timestamp - segmentBase > Integer.MAX_VALUE) {
+                startSegment(timestamp);
+            }
+            if (buffer.remaining() < RECORD_SIZE) flush();
+            buffer.putInt((int) (timestamp - segmentBase)).put((byte) characteristic).putInt(value);
+            segmentBytes += RECORD_SIZE;
+            segmentLast = timestamp;
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void startSegment(long timestamp) throws IOException {
+        if (channel != null) {
+            flush();
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        sequence++;
+        channel = new FileOutputStream(segmentFile(directory, sequence)).getChannel();
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(timestamp);
+        segmentBase = segmentLast = timestamp;
+        segmentBytes = HEADER_SIZE;
+
+        for (File f : segments(directory)) {
+            if (sequenceOf(f) <= sequence - maxSegments) f.delete();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static File segmentFile(File directory, int sequence) {
+        return new File(directory, String.format(Locale.US, "%s%08d%s", PREFIX, sequence, EXTENSION));
+    }
+
+    /**
+     * @return the segment files of the directory, oldest first
+     */
+    static File[] segments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(EXTENSION)
+                && sequenceOf(name) > 0);
+        if (files == null) return new File[0];
+        Arrays.sort(files, (a, b) -> Integer.compare(sequenceOf(a), sequenceOf(b)));
+        return files;
+    }
+
+    private static int lastSequence(File directory) {
+        File[] files = segments(directory);
+        return files.length > 0 ? sequenceOf(files[files.length - 1]) : 0;
+    }
+
+    private static int sequenceOf(File file) {
+        return sequenceOf(file.getName());
+    }
+
+    private static int sequenceOf(String name) {
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Project: Labo4
+ * Reads the segments of a TelemetryLog directory, memory-mapped, as they are when it is opened
+ * (a log still being written can be read, the records written afterwards are not seen).
+ * The records of a time range are found by a binary search in each segment. A record truncated
+ * at the end of a segment (e.g. the application was killed) is ignored, as are the files that
+ * are not segments. Can be run on a plain JVM to dump a log as CSV:
+ * Usage: TelemetryReader [--from ms] [--to ms] directory
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class TelemetryReader {
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final List<Long> bases = new ArrayList<>();
+    private long records = 0;
+
+    public TelemetryReader(File directory) throws IOException {
+        for (File file : TelemetryLog.segments(directory)) {
+            ByteBuffer segment;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                if (raf.length() < TelemetryLog.HEADER_SIZE) continue;
+                segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (segment.getInt(0) != TelemetryLog.MAGIC || segment.getInt(4) != TelemetryLog.VERSION) continue;
+            segments.add(segment);
+            bases.add(segment.getLong(8));
+            records += recordCount(segment);
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Gives the records with from <= timestamp < to, in the order they were logged
+     * @return the number of records given
+     */
+    public long scan(long from, long to, NotificationRing.RecordHandler handler) {
+        long scanned = 0;
+        for (int s = 0; s < segments.size(); ++s) {
+            ByteBuffer segment = segments.get(s);
+            long base = bases.get(s);
+            int count = recordCount(segment);
+            if (count == 0 || base >= to || timestamp(segment, base, count - 1) < from) continue;
+
+            for (int i = lowerBound(segment, base, count, from); i < count; ++i) {
+                int position = TelemetryLog.HEADER_SIZE + i * TelemetryLog.RECORD_SIZE;
+                long timestamp = base + segment.getInt(position);
+                if (timestamp >= to) break;
+                handler.onRecord(timestamp, segment.get(position + 4) & 0xFF, segment.getInt(position + 5));
+                scanned++;
+            }
+        }
+        return scanned;
+    }
+
+    private static int recordCount(ByteBuffer segment) {
+        return (segment.capacity() - TelemetryLog.HEADER_SIZE) / TelemetryLog.RECORD_SIZE;
+    }
+
+    private static long timestamp(ByteBuffer segment, long base, int index) {
+        return base + segment.getInt(TelemetryLog.HEADER_SIZE + index * TelemetryLog.RECORD_SIZE);
+    }
+
+    /*
+     * Index of the first record at or after the timestamp, the timestamps never decrease in a segment
+     */
+    private static int lowerBound(ByteBuffer segment, long base, int count, long timestamp) {
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamp(segment, base, middle) < timestamp) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+        File directory = null;
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--from": from = Long.parseLong(args[++i]); break;
+                    case "--to": to = Long.parseLong(args[++i]); break;
+                    default: directory = new File(args[i]); break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            directory = null;
+        }
+        if (directory == null || !directory.isDirectory()) {
+            System.err.println("Usage: TelemetryReader [--from ms] [--to ms] directory");
+            System.exit(1);
+        }
+
+        TelemetryReader reader = new TelemetryReader(directory);
+        PrintStream out = System.out;
+        out.println("timestamp,characteristic,value");
+        StringBuilder line = new StringBuilder();
+        long scanned = reader.scan(from, to, (timestamp, characteristic, value) -> {
+            line.setLength(0);
+            line.append(timestamp).append(',').append(characteristic).append(',').append(value);
+            out.println(line);
+        });
+        System.err.println(directory + ": " + scanned + " of " + reader.getRecordCount()
+                + " records, " + reader.getSegmentCount() + " segments");
+    }
+}
@@ -0,0 +1,100 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+/**
+ * Project: Labo4
+ * Fixed capacity series of (timestamp, value) samples, in primitive arrays used as a ring:
+ * once full, the oldest samples are overwritten. The samples are indexed from the oldest (0).
+ * Not thread-safe, snapshot() gives an independent copy, e.g. to publish it to the UI
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class TimeSeries {
+
+    private final long[] timestamps;
+    private final float[] values;
+    private int head = 0;
+    private int size = 0;
+
+    public TimeSeries(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.timestamps = new long[capacity];
+        this.values = new float[capacity];
+    }
+
+    public void add(long timestamp, float value) {
+        int i = (head + size) % timestamps.length;
+        timestamps[i] = timestamp;
+        values[i] = value;
+        if (size < timestamps.length) {
+            size++;
+        } else {
+            head = (head + 1) % timestamps.length;
+        }
+    }
+
+    public void clear() {
+        head = size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[position(index)];
+    }
+
+    public float getValue(int index) {
+        return values[position(index)];
+    }
+
+    public float getLastValue() {
+        return getValue(size - 1);
+    }
+
+    public float getMin() {
+        float min = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < size; ++i) min = Math.min(min, getValue(i));
+        return min;
+    }
+
+    public float getMax() {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; ++i) max = Math.max(max, getValue(i));
+        return max;
+    }
+
+    public float getMean() {
+        if (size == 0) return Float.NaN;
+        double sum = 0;
+        for (int i = 0; i < size; ++i) sum += getValue(i);
+        return (float) (sum / size);
+    }
+
+    /**
+     * @return a copy of the series, with the same capacity
+     */
+    public TimeSeries snapshot() {
+        TimeSeries copy = new TimeSeries(timestamps.length);
+        for (int i = 0; i < size; ++i) {
+            copy.timestamps[i] = getTimestamp(i);
+            copy.values[i] = getValue(i);
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    private int position(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return (head + index) % timestamps.length;
+    }
+}
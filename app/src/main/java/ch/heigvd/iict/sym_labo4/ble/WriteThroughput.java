@@ -0,0 +1,91 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import java.util.Locale;
+
+/**
+ * Project: Labo4
+ * Progress and sustained throughput of a stream of writes (see IntegerStreamWriter), immutable
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class WriteThroughput {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final int values;
+    private final int totalValues;
+    private final int packets;
+    private final long bytes;
+    private final int failures;
+    private final long elapsedNs;
+    private final boolean finished;
+
+    WriteThroughput(int values, int totalValues, int packets, long bytes, int failures,
+                    long elapsedNs, boolean finished) {
+        this.values = values;
+        this.totalValues = totalValues;
+        this.packets = packets;
+        this.bytes = bytes;
+        this.failures = failures;
+        this.elapsedNs = elapsedNs;
+        this.finished = finished;
+    }
+
+    /**
+     * @return the number of values written so far
+     */
+    public int getValues() {
+        return values;
+    }
+
+    public int getTotalValues() {
+        return totalValues;
+    }
+
+    /**
+     * @return the number of write operations (packets) completed so far
+     */
+    public int getPackets() {
+        return packets;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of packets that could not be written
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    public long getElapsedNs() {
+        return elapsedNs;
+    }
+
+    /**
+     * @return true once the stream is over, completely written or not
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean isComplete() {
+        return finished && values == totalValues && failures == 0;
+    }
+
+    public double getWritesPerSecond() {
+        return elapsedNs > 0 ? packets * NANOS_PER_SECOND / elapsedNs : 0;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedNs > 0 ? bytes * NANOS_PER_SECOND / elapsedNs : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d/%d values, %.0f writes/s, %.0f B/s%s",
+                values, totalValues, getWritesPerSecond(), getBytesPerSecond(),
+                failures > 0 ? ", " + failures + " failed" : "");
+    }
+}
@@ -0,0 +1,213 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import android.content.Context;
+import android.opengl.GLSurfaceView.Renderer;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.opengles.GL10;
+
+import ch.heigvd.iict.sym_labo4.gl.objects.ObjLoader;
+
+/**
+ * Project: Labo4
+ * Common part of the compass renderers (fixed-function and programmable pipelines):
+ * background loading of the arrow, GPU buffers life cycle, rotation matrix, frame timing and metrics
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public abstract class BaseCompassRenderer implements Renderer {
+
+    private static final String TAG = BaseCompassRenderer.class.getSimpleName();
+
+    private static final String ARROW_ASSET = "arrow.obj";
+
+    // model being loaded in the background, until it is available on the GL thread
+    private Future<ObjLoader> arrow3DModelLoading = null;
+    private ObjLoader arrow3DModel = null;
+    // whether the arrow has been uploaded into GPU buffers of the current EGL context
+    private boolean arrow3DModelUploaded = false;
+    // notified once the arrow can be drawn, e.g. to request a render
+    private volatile Runnable onModelLoadedListener = null;
+
+    // frame timing, reported to the pacer (if any) and to the metrics
+    private volatile FramePacer framePacer = null;
+    private final FrameMetrics frameMetrics = new FrameMetrics();
+    private long frameStart = 0;
+    private int frameDrawCalls = 0;
+    // timestamp of the sensor event of the last rotation matrix drawn
+    private long lastRotTimestamp = 0;
+    // timestamp of the sensor event first shown by the current frame, 0 if none
+    private long frameRotTimestamp = 0;
+
+    // identity rotation matrix
+    private static final float[] IDENTITY = {   1f, 0f ,0f ,0f,
+                                                0f, 1f ,0f ,0f,
+                                                0f, 0f ,1f ,0f,
+                                                0f, 0f ,0f ,1f };
+
+    // rotation matrix, handed over from the sensors thread to the GL thread
+    private final TripleBufferedMatrix rotMatrix = new TripleBufferedMatrix(IDENTITY);
+
+    protected BaseCompassRenderer(Context ctx) {
+        // we do not block the caller (UI thread) while the model is parsed
+        this.arrow3DModelLoading = ObjLoader.loadAsync(ctx.getAssets(), ARROW_ASSET, () -> {
+            Runnable listener = this.onModelLoadedListener;
+            if(listener != null) listener.run();
+        });
+    }
+
+    /**
+     * Sets a listener called (from a background thread) once the arrow has been loaded,
+     * needed when the frames are only rendered on demand. If the arrow is already
+     * loaded, the listener is called immediately
+     */
+    public void setOnModelLoadedListener(Runnable listener) {
+        this.onModelLoadedListener = listener;
+        Future<ObjLoader> loading = this.arrow3DModelLoading;
+        if(listener != null && (loading == null || loading.isDone())) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Uploads the model into GPU buffers of the current context
+     */
+    protected abstract void uploadModel(ObjLoader model);
+
+    /**
+     * Deletes the GPU buffers of the model from the current context
+     */
+    protected abstract void releaseModel(ObjLoader model);
+
+    /**
+     * Returns the arrow model once its background loading is over, null before
+     * or if the loading failed. The model is uploaded to the GPU on first use.
+     * Must be called from the GL thread
+     */
+    protected ObjLoader getArrow3DModel() {
+        if(this.arrow3DModelLoading != null && this.arrow3DModelLoading.isDone()) {
+            try {
+                this.arrow3DModel = this.arrow3DModelLoading.get();
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e(TAG, "Could not load the 3D model", e);
+            }
+            this.arrow3DModelLoading = null;
+        }
+        if(this.arrow3DModel != null && !this.arrow3DModelUploaded) {
+            uploadModel(this.arrow3DModel);
+            this.arrow3DModelUploaded = true;
+        }
+        return this.arrow3DModel;
+    }
+
+    /**
+     * To be called from onSurfaceCreated: a new EGL context has been created,
+     * the GPU buffers of the previous one (if any) are gone
+     */
+    protected void onContextCreated() {
+        if(this.arrow3DModel != null) {
+            this.arrow3DModel.discardBuffers();
+        }
+        this.arrow3DModelUploaded = false;
+        // Upload the arrow now if it is already loaded, otherwise on its first frame
+        getArrow3DModel();
+    }
+
+    /**
+     * Releases the GPU buffers of the arrow, they are uploaded again on next use.
+     * Must be run on the GL thread, e.g. with GLSurfaceView.queueEvent() before GLSurfaceView.onPause()
+     */
+    public void releaseGlResources() {
+        if(this.arrow3DModel != null && this.arrow3DModelUploaded && currentGl() != null) {
+            releaseModel(this.arrow3DModel);
+        }
+        this.arrow3DModelUploaded = false;
+    }
+
+    /**
+     * @return the latest rotation matrix to apply to the arrow, must not be modified.
+     * Must be called from the GL thread, once per frame
+     */
+    protected float[] getRotMatrix() {
+        float[] matrix = this.rotMatrix.latest();
+        long timestamp = this.rotMatrix.getTimestamp();
+        // the latency of a sensor event is only measured on the first frame showing it,
+        // once that frame is over (see onFrameEnd)
+        if(timestamp != 0 && timestamp != this.lastRotTimestamp) {
+            this.lastRotTimestamp = timestamp;
+            this.frameRotTimestamp = timestamp;
+        }
+        return matrix;
+    }
+
+    /**
+     * Method used to replace the current rotation matrix with a new one. The matrix is
+     * copied, the caller can reuse its array. Must always be called from the same thread
+     * @param rotMatrix The new rotationMatrix
+     * @param timestamp SensorEvent.timestamp of the event the matrix comes from, 0 if unknown
+     */
+    public void setRotMatrix(float[] rotMatrix, long timestamp) {
+        this.rotMatrix.publish(rotMatrix, timestamp);
+    }
+
+    /**
+     * @return the metrics of the frames rendered so far, can be read from any thread
+     */
+    public FrameMetrics getFrameMetrics() {
+        return this.frameMetrics;
+    }
+
+    /**
+     * Sets the pacer the frames are reported to, null for none.
+     * The pacer decides when frames are rendered, the renderer never waits
+     */
+    public void setFramePacer(FramePacer framePacer) {
+        this.framePacer = framePacer;
+    }
+
+    /**
+     * To be called at the beginning of onDrawFrame
+     */
+    protected void onFrameStart() {
+        this.frameStart = System.nanoTime();
+        this.frameDrawCalls = 0;
+        this.frameRotTimestamp = 0;
+    }
+
+    /**
+     * To be called after each draw call(s) of the frame
+     */
+    protected void countDrawCalls(int count) {
+        this.frameDrawCalls += count;
+    }
+
+    /**
+     * To be called at the end of onDrawFrame
+     */
+    protected void onFrameEnd() {
+        long frameEnd = System.nanoTime();
+        this.frameMetrics.recordFrame(this.frameStart, frameEnd, this.frameDrawCalls);
+        if(this.frameRotTimestamp != 0) {
+            this.frameMetrics.recordSensorLatency(SystemClock.elapsedRealtimeNanos() - this.frameRotTimestamp);
+        }
+        FramePacer pacer = this.framePacer;
+        if(pacer != null) {
+            pacer.onFrameRendered(this.frameStart, frameEnd);
+        }
+    }
+
+    /**
+     * @return the GL of the context current on this thread, null if there is none
+     */
+    protected static GL10 currentGl() {
+        EGLContext context = ((EGL10) EGLContext.getEGL()).eglGetCurrentContext();
+        if(context == null || context == EGL10.EGL_NO_CONTEXT) return null;
+        return (GL10) context.getGL();
+    }
+
+}
@@ -0,0 +1,95 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import java.util.Locale;
+
+/**
+ * Project: Labo4
+ * Render pipeline metrics, recorded by the renderer (GL thread) without allocating:
+ * CPU time of each frame, interval between two frames, draw calls per frame and latency
+ * from the sensor event to the end of the frame that used it. Durations are in nanoseconds
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class FrameMetrics {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // 0.1 ms precision
+    private static final long TIME_PRECISION = NANOS_PER_MILLI / 10;
+
+    private final Histogram frameTime = new Histogram(TIME_PRECISION, 500);
+    private final Histogram frameInterval = new Histogram(TIME_PRECISION, 1000);
+    private final Histogram drawCalls = new Histogram(1, 64);
+    private final Histogram sensorLatency = new Histogram(TIME_PRECISION, 2000);
+
+    private long lastFrameStart = 0;
+
+    /**
+     * Records a frame, from the GL thread
+     * @param startNanos System.nanoTime() at the beginning of the frame
+     * @param endNanos System.nanoTime() at the end of the frame
+     * @param nbDrawCalls draw calls issued during the frame
+     */
+    void recordFrame(long startNanos, long endNanos, int nbDrawCalls) {
+        frameTime.record(endNanos - startNanos);
+        if(lastFrameStart != 0) {
+            frameInterval.record(startNanos - lastFrameStart);
+        }
+        lastFrameStart = startNanos;
+        drawCalls.record(nbDrawCalls);
+    }
+
+    /**
+     * Records the latency of a sensor event, the first time a frame uses it, from the GL thread
+     */
+    void recordSensorLatency(long latencyNanos) {
+        sensorLatency.record(latencyNanos);
+    }
+
+    /**
+     * Forgets all the metrics, from the GL thread (e.g. with GLSurfaceView.queueEvent())
+     */
+    public void reset() {
+        frameTime.reset();
+        frameInterval.reset();
+        drawCalls.reset();
+        sensorLatency.reset();
+        lastFrameStart = 0;
+    }
+
+    public Histogram getFrameTime() {
+        return frameTime;
+    }
+
+    public Histogram getFrameInterval() {
+        return frameInterval;
+    }
+
+    public Histogram getDrawCalls() {
+        return drawCalls;
+    }
+
+    public Histogram getSensorLatency() {
+        return sensorLatency;
+    }
+
+    /**
+     * @return the p50/p95/p99 of the metrics on a few lines, e.g. for an overlay or the log
+     */
+    public String summary() {
+        return String.format(Locale.US,
+                "frames: %d\n" +
+                "cpu (ms) p50 %.1f p95 %.1f p99 %.1f\n" +
+                "interval (ms) p50 %.1f p95 %.1f p99 %.1f\n" +
+                "draw calls p50 %d p95 %d p99 %d\n" +
+                "sensor latency (ms) p50 %.1f p95 %.1f p99 %.1f",
+                frameTime.getCount(),
+                millis(frameTime, 50), millis(frameTime, 95), millis(frameTime, 99),
+                millis(frameInterval, 50), millis(frameInterval, 95), millis(frameInterval, 99),
+                drawCalls.getPercentile(50), drawCalls.getPercentile(95), drawCalls.getPercentile(99),
+                millis(sensorLatency, 50), millis(sensorLatency, 95), millis(sensorLatency, 99));
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getPercentile(percentile) / (double) NANOS_PER_MILLI;
+    }
+
+}
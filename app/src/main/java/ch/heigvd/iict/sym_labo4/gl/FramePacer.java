@@ -0,0 +1,142 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+
+/**
+ * Project: Labo4
+ * Requests the frames of a GLSurfaceView (in RENDERMODE_WHEN_DIRTY) in sync with the display
+ * refresh, through Choreographer callbacks, at a target rate (e.g. 30 or 60 fps, or the display
+ * native rate). The renderer reports each frame to the pacer, which counts the dropped frames
+ * (vsync slots that were skipped) and the late ones (that took longer than the frame budget).
+ * start() and stop() must be called from the main thread
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class FramePacer implements Choreographer.FrameCallback {
+
+    private static final String TAG = FramePacer.class.getSimpleName();
+
+    // target rate meaning "the refresh rate of the display"
+    public static final float DISPLAY_RATE = 0f;
+
+    private static final float DEFAULT_DISPLAY_RATE = 60f;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final GLSurfaceView view;
+    // display of the activity, used while the view is not attached to a window yet
+    private final Display display;
+    private float targetRate;
+
+    // main thread: vsync handling
+    private boolean running = false;
+    private long vsyncPeriod = NANOS_PER_SECOND / 60;
+    private int vsyncDivider = 1;
+    private int vsyncCounter = 0;
+
+    // GL thread: frame statistics, read from any thread
+    private volatile long targetPeriod = NANOS_PER_SECOND / 60;
+    private long lastFrameStart = 0;
+    private volatile long renderedFrames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile long lateFrames = 0;
+
+    /**
+     * @param display display of the activity showing the view, its refresh rate is used
+     *                until the view is attached (view.getDisplay() is null before that)
+     * @param targetRate frames per second, or DISPLAY_RATE
+     */
+    public FramePacer(GLSurfaceView view, Display display, float targetRate) {
+        this.view = view;
+        this.display = display;
+        this.targetRate = targetRate;
+    }
+
+    /**
+     * Changes the target rate, takes effect at the next start()
+     * @param targetRate frames per second, or DISPLAY_RATE
+     */
+    public void setTargetRate(float targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    /**
+     * Starts requesting frames, e.g. in onResume()
+     */
+    public void start() {
+        if(running) return;
+        Display display = view.getDisplay() != null ? view.getDisplay() : this.display;
+        float displayRate = display != null ? display.getRefreshRate() : DEFAULT_DISPLAY_RATE;
+        if(displayRate <= 0f) displayRate = DEFAULT_DISPLAY_RATE;
+
+        // we render one vsync out of vsyncDivider
+        vsyncPeriod = Math.round(NANOS_PER_SECOND / (double) displayRate);
+        vsyncDivider = targetRate <= 0f ? 1 : Math.max(1, Math.round(displayRate / targetRate));
+        vsyncCounter = 0;
+        targetPeriod = vsyncPeriod * vsyncDivider;
+        lastFrameStart = 0;
+
+        running = true;
+        Choreographer.getInstance().postFrameCallback(this);
+        Log.d(TAG, "Pacing at " + (displayRate / vsyncDivider) + " fps, display at " + displayRate + " Hz");
+    }
+
+    /**
+     * Stops requesting frames, e.g. in onPause()
+     */
+    public void stop() {
+        if(!running) return;
+        running = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        Log.i(TAG, "Frames rendered: " + renderedFrames + ", dropped: " + droppedFrames + ", late: " + lateFrames);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if(!running) return;
+        if(vsyncCounter++ % vsyncDivider == 0) {
+            view.requestRender();
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * To be called by the renderer (GL thread) after each frame
+     * @param startNanos System.nanoTime() at the beginning of the frame
+     * @param endNanos System.nanoTime() at the end of the frame
+     */
+    public void onFrameRendered(long startNanos, long endNanos) {
+        long period = targetPeriod;
+        if(lastFrameStart != 0) {
+            // frames expected between this one and the previous one, but not rendered
+            long missed = (startNanos - lastFrameStart + period / 2) / period - 1;
+            if(missed > 0) droppedFrames += missed;
+        }
+        if(endNanos - startNanos > period) {
+            lateFrames++;
+        }
+        lastFrameStart = startNanos;
+        renderedFrames++;
+    }
+
+    /**
+     * @return the duration of a frame at the target rate, in nanoseconds
+     */
+    public long getTargetPeriod() {
+        return targetPeriod;
+    }
+
+    public long getRenderedFrames() {
+        return renderedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+}
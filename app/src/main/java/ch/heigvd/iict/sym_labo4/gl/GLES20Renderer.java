@@ -0,0 +1,136 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+import ch.heigvd.iict.sym_labo4.gl.objects.ObjLoader;
+
+/**
+ * Project: Labo4
+ * Same rendering as OpenGLRenderer, but with the programmable pipeline of OpenGL ES 2.0:
+ * the model-view-projection matrix is computed once per frame and given to a shader.
+ * The GLSurfaceView must be configured with setEGLContextClientVersion(2)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class GLES20Renderer extends BaseCompassRenderer {
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uMVPMatrix;\n" +
+            "attribute vec4 aPosition;\n" +
+            "attribute vec4 aColor;\n" +
+            "varying vec4 vColor;\n" +
+            "void main() {\n" +
+            "    vColor = aColor;\n" +
+            "    gl_Position = uMVPMatrix * aPosition;\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n" +
+            "varying vec4 vColor;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vColor;\n" +
+            "}\n";
+
+    private final ShaderCache shaders = new ShaderCache();
+
+    // program and its locations, for the current context
+    private int program = 0;
+    private int uMVPMatrix = -1;
+    private int aPosition = -1;
+    private int aColor = -1;
+
+    // projection * view, updated when the surface changes
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+    private final float[] viewProjectionMatrix = new float[16];
+    // viewProjection * rotation, updated at each frame
+    private final float[] mvpMatrix = new float[16];
+
+    public GLES20Renderer(Context ctx) {
+        super(ctx);
+        // same camera as OpenGLRenderer
+        Matrix.setLookAtM(viewMatrix, 0, 0f, 0f, 50f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+    }
+
+    @Override
+    public void onSurfaceCreated(GL10 unused, EGLConfig config) {
+        // Set the background color to black ( rgba ).
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        // Depth buffer setup.
+        GLES20.glClearDepthf(1.0f);
+        // Enables depth testing.
+        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        // The type of depth testing to do.
+        GLES20.glDepthFunc(GLES20.GL_LEQUAL);
+
+        // the programs of the previous context (if any) are gone
+        this.shaders.clear();
+        this.program = 0;
+        prepareProgram();
+
+        onContextCreated();
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 unused, int width, int height) {
+        GLES20.glViewport(0, 0, width, height);
+        Matrix.perspectiveM(projectionMatrix, 0, 45.0f, (float) width / (float) height, 0.1f, 100.0f);
+        Matrix.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+    }
+
+    @Override
+    public void onDrawFrame(GL10 unused) {
+        onFrameStart();
+
+        // Clears the screen and depth buffer.
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        //until the arrow is loaded, we only clear the screen
+        ObjLoader arrow = getArrow3DModel();
+        if(arrow != null) {
+            prepareProgram();
+            Matrix.multiplyMM(mvpMatrix, 0, viewProjectionMatrix, 0, getRotMatrix(), 0);
+            GLES20.glUseProgram(this.program);
+            GLES20.glUniformMatrix4fv(this.uMVPMatrix, 1, false, mvpMatrix, 0);
+            arrow.drawGLES20(this.aPosition, this.aColor);
+            countDrawCalls(arrow.getDrawCallCount());
+        }
+
+        onFrameEnd();
+    }
+
+    /*
+     * Gets the (cached) program and its locations, if they are not known for the current context
+     */
+    private void prepareProgram() {
+        if(this.program != 0) return;
+        this.program = this.shaders.getProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        this.uMVPMatrix = GLES20.glGetUniformLocation(this.program, "uMVPMatrix");
+        this.aPosition = GLES20.glGetAttribLocation(this.program, "aPosition");
+        this.aColor = GLES20.glGetAttribLocation(this.program, "aColor");
+    }
+
+    @Override
+    public void releaseGlResources() {
+        super.releaseGlResources();
+        if(currentGl() != null) {
+            this.shaders.release();
+        }
+        this.program = 0;
+    }
+
+    @Override
+    protected void uploadModel(ObjLoader model) {
+        model.uploadBuffersGLES20();
+    }
+
+    @Override
+    protected void releaseModel(ObjLoader model) {
+        model.releaseBuffersGLES20();
+    }
+
+}
@@ -0,0 +1,83 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import java.util.Arrays;
+
+/**
+ * Project: Labo4
+ * Fixed-size histogram of positive values, e.g. durations in nanoseconds, with buckets of
+ * equal width. Values above the last bucket are counted in it, the maximum is kept apart.
+ * Recording never allocates. It must be done from a single thread, the other threads may
+ * read the percentiles, which are then approximate while values are being recorded
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class Histogram {
+
+    private final long bucketWidth;
+    private final long[] counts;
+
+    // written last, reading it first makes the counts visible to the other threads
+    private volatile long total = 0;
+    private volatile long max = 0;
+
+    /**
+     * @param bucketWidth width of each bucket, i.e. the precision of the percentiles
+     * @param bucketCount number of buckets, values from bucketWidth * bucketCount are
+     *                    only counted in the last one
+     */
+    public Histogram(long bucketWidth, int bucketCount) {
+        if(bucketWidth <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("Invalid histogram size: " + bucketCount + " x " + bucketWidth);
+        }
+        this.bucketWidth = bucketWidth;
+        this.counts = new long[bucketCount];
+    }
+
+    /**
+     * Records a value, negative ones are counted as 0
+     */
+    public void record(long value) {
+        if(value < 0) value = 0;
+        long bucket = value / bucketWidth;
+        counts[bucket < counts.length ? (int) bucket : counts.length - 1]++;
+        if(value > max) max = value;
+        total++;
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 95
+     * @return the middle of the bucket holding the given percentile of the recorded values
+     * (at most the maximum), 0 if nothing has been recorded. With buckets of width 1, e.g.
+     * for counts, this is the exact value
+     */
+    public long getPercentile(double percentile) {
+        long n = total;
+        if(n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for(int i = 0; i < counts.length - 1; ++i) {
+            seen += counts[i];
+            if(seen >= rank) {
+                return Math.min(i * bucketWidth + bucketWidth / 2, max);
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Forgets all the recorded values, from the recording thread
+     */
+    public void reset() {
+        total = 0;
+        max = 0;
+        Arrays.fill(counts, 0);
+    }
+
+}
@@ -1,15 +1,10 @@
 package ch.heigvd.iict.sym_labo4.gl;
 
-import java.io.IOException;
-import java.io.InputStream;
-
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
 import android.opengl.GLU;
-import android.opengl.GLSurfaceView.Renderer;
-import android.util.Log;
 
 import ch.heigvd.iict.sym_labo4.gl.objects.ObjLoader;
 
@@ -18,28 +13,10 @@ import ch.heigvd.iict.sym_labo4.gl.objects.ObjLoader;
  * Created by fabien.dutoit on 21.11.2016
  * (C) 2016 - HEIG-VD, IICT
  */
-public class OpenGLRenderer implements Renderer {
-
-    private static final String TAG = OpenGLRenderer.class.getSimpleName();
-
-    //60 frames per second
-    private static long frameInterval = Math.round(1000f / 60f);
-
-    private ObjLoader arrow3DModel = null;
-
-    // identity rotation matrix
-    private float[] rotMatrix = {   1f, 0f ,0f ,0f,
-                                    0f, 1f ,0f ,0f,
-                                    0f, 0f ,1f ,0f,
-                                    0f, 0f ,0f ,1f };
+public class OpenGLRenderer extends BaseCompassRenderer {
 
 	public OpenGLRenderer(Context ctx) {
-        try {
-            InputStream in = ctx.getAssets().open("arrow.obj");
-            this.arrow3DModel = new ObjLoader(in);
-        } catch (IOException e) {
-            Log.e(TAG, "", e);
-        }
+        super(ctx);
 	}
 
 	/*
@@ -62,6 +39,8 @@ public class OpenGLRenderer implements Renderer {
 		gl.glDepthFunc(GL10.GL_LEQUAL);
 		// Really nice perspective calculations.
 		gl.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT, GL10.GL_NICEST);
+
+		onContextCreated();
 	}
 
 	/*
@@ -73,8 +52,7 @@ public class OpenGLRenderer implements Renderer {
 	 */
 
 	public void onDrawFrame(GL10 gl) {
-        // get the time at the start of the frame
-        long time = System.currentTimeMillis();
+        onFrameStart();
 
 		// Clears the screen and depth buffer.
 		gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
@@ -83,27 +61,21 @@ public class OpenGLRenderer implements Renderer {
 
         GLU.gluLookAt(gl, 0f, 0f, 50f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
 
-        //we save current matrix stack
-		gl.glPushMatrix();
-            //we apply rotation
-            gl.glMultMatrixf(rotMatrix, 0);
-            //we draw the arrow
-			this.arrow3DModel.draw(gl);
-        //we restore matric stack
-		gl.glPopMatrix();
-
-        // get the time taken to render the frame
-        long time2 = System.currentTimeMillis() - time;
-
-        // if time elapsed is less than the frame interval
-        if(time2 < frameInterval){
-            try {
-                // sleep the thread for the remaining time until the interval has elapsed
-                Thread.sleep(frameInterval - time2);
-            } catch (InterruptedException e) { /* InterruptedException */}
-        } else {
-            Log.w(TAG, "Slower than 60 fps");
+        //until the arrow is loaded, we only clear the screen
+        ObjLoader arrow = getArrow3DModel();
+        if(arrow != null) {
+            //we save current matrix stack
+            gl.glPushMatrix();
+                //we apply rotation
+                gl.glMultMatrixf(getRotMatrix(), 0);
+                //we draw the arrow
+                arrow.draw(gl);
+                countDrawCalls(arrow.getDrawCallCount());
+            //we restore matric stack
+            gl.glPopMatrix();
         }
+
+        onFrameEnd();
 	}
 
 	/*
@@ -128,15 +100,14 @@ public class OpenGLRenderer implements Renderer {
 		gl.glLoadIdentity();
 	}
 
-    /**
-     * Method used to replace the current rotation matrix with a new one
-     * @param rotMatrix The new rotationMatrix
-     * @return the old rotation matrix to be recycled
-     */
-    public float[] swapRotMatrix(float[] rotMatrix) {
-        float[] tmp = this.rotMatrix;
-        this.rotMatrix = rotMatrix;
-        return tmp;
+    @Override
+    protected void uploadModel(ObjLoader model) {
+        model.uploadBuffers(currentGl());
+    }
+
+    @Override
+    protected void releaseModel(ObjLoader model) {
+        model.releaseBuffers(currentGl());
     }
 
 }
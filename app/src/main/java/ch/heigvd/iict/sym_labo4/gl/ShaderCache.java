@@ -0,0 +1,87 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Project: Labo4
+ * Compiles and links the shader programs once per EGL context, then returns the cached programs
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class ShaderCache {
+
+    private static final String TAG = ShaderCache.class.getSimpleName();
+
+    private final Map<String, Integer> programs = new HashMap<>();
+
+    /**
+     * Returns the program made of the two shaders, compiles and links it on first use.
+     * Must be called from the GL thread
+     * @throws IllegalStateException if a shader does not compile or the program does not link
+     */
+    int getProgram(String vertexShader, String fragmentShader) {
+        String key = vertexShader + '\0' + fragmentShader;
+        Integer program = programs.get(key);
+        if(program == null) {
+            program = link(compile(GLES20.GL_VERTEX_SHADER, vertexShader),
+                    compile(GLES20.GL_FRAGMENT_SHADER, fragmentShader));
+            programs.put(key, program);
+        }
+        return program;
+    }
+
+    /**
+     * Forgets the programs, to be used when the EGL context has been lost (they were destroyed with it)
+     */
+    void clear() {
+        programs.clear();
+    }
+
+    /**
+     * Deletes the programs, must be called from the GL thread while their context is current
+     */
+    void release() {
+        for(int program : programs.values()) {
+            GLES20.glDeleteProgram(program);
+        }
+        programs.clear();
+    }
+
+    private static int compile(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if(status[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            Log.e(TAG, "Could not compile shader: " + log);
+            throw new IllegalStateException("Could not compile shader: " + log);
+        }
+        return shader;
+    }
+
+    private static int link(int vertexShader, int fragmentShader) {
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        // the shaders are freed with the program
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if(status[0] == 0) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            Log.e(TAG, "Could not link program: " + log);
+            throw new IllegalStateException("Could not link program: " + log);
+        }
+        return program;
+    }
+
+}
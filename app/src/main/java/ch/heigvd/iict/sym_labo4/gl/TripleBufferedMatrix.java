@@ -0,0 +1,74 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Project: Labo4
+ * Wait-free exchange of a 4x4 matrix between one writer thread (e.g. sensors) and one
+ * reader thread (e.g. GL). Three buffers are used: the writer fills its back buffer and
+ * publishes it as the pending one, the reader takes the pending one as its front buffer.
+ * Neither thread ever blocks, allocates, or sees a buffer being written by the other one
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class TripleBufferedMatrix {
+
+    private static final int INDEX_MASK = 0x3;
+    // set when the pending buffer has been published and not taken yet
+    private static final int FRESH = 0x4;
+
+    private final float[][] buffers = new float[3][16];
+    // time of each matrix, e.g. of the sensor event it comes from
+    private final long[] timestamps = new long[3];
+
+    // index of the pending buffer, and FRESH flag
+    private final AtomicInteger pending = new AtomicInteger(1);
+    // owned by the writer
+    private int back = 0;
+    // owned by the reader
+    private int front = 2;
+
+    /**
+     * @param initial matrix returned by the reader until the first publication
+     */
+    public TripleBufferedMatrix(float[] initial) {
+        for(float[] buffer : buffers) {
+            System.arraycopy(initial, 0, buffer, 0, 16);
+        }
+    }
+
+    /**
+     * Writer side: copies the matrix and publishes it, replacing any matrix not taken yet
+     */
+    public void publish(float[] matrix) {
+        publish(matrix, 0);
+    }
+
+    /**
+     * Same as publish(matrix), the timestamp is returned with the matrix by getTimestamp()
+     */
+    public void publish(float[] matrix, long timestamp) {
+        System.arraycopy(matrix, 0, buffers[back], 0, 16);
+        timestamps[back] = timestamp;
+        // the atomic swap also makes the content of the buffer visible to the reader
+        back = pending.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Reader side: returns the latest published matrix. The returned array belongs to the
+     * reader until its next call, it must not be modified
+     */
+    public float[] latest() {
+        if((pending.get() & FRESH) != 0) {
+            front = pending.getAndSet(front) & INDEX_MASK;
+        }
+        return buffers[front];
+    }
+
+    /**
+     * Reader side: returns the timestamp of the matrix returned by the last call to latest()
+     */
+    public long getTimestamp() {
+        return timestamps[front];
+    }
+
+}
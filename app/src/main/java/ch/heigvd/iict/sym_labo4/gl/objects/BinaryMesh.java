@@ -0,0 +1,264 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Project: Labo4
+ * Precompiled version of an .obj model, produced by MeshConverter.
+ * The content can be used directly as vertex/index/color buffers, without any parsing.
+ *
+ * Layout (little endian):
+ *  header:  magic, version, source length, source crc32, mesh count, payload crc32
+ *           (the source is the .obj followed by its .mtl libraries, see Fingerprint)
+ *  table:   for each mesh, number of vertex floats, of indices and of color floats
+ *  payload: for each mesh, its vertices, its indices (padded to 4 bytes) and its colors
+ * A mesh with a flat color has a single color (4 floats) instead of one per vertex.
+ * The indices are unsigned shorts.
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class BinaryMesh {
+
+	static final String EXTENSION = ".symm";
+
+	// "SYMM"
+	static final int MAGIC = 0x4d4d5953;
+	// 2: flat colors
+	// 3: the source fingerprint covers the material libraries
+	static final int VERSION = 3;
+
+	private static final int HEADER_SIZE = 6 * 4;
+	private static final int ENTRY_SIZE = 3 * 4;
+
+	private final Fingerprint source;
+	private final FloatBuffer[] vertices;
+	private final ShortBuffer[] indices;
+	private final FloatBuffer[] colors;
+
+	private BinaryMesh(Fingerprint source, int meshCount) {
+		this.source = source;
+		this.vertices = new FloatBuffer[meshCount];
+		this.indices = new ShortBuffer[meshCount];
+		this.colors = new FloatBuffer[meshCount];
+	}
+
+	int getMeshCount() {
+		return vertices.length;
+	}
+
+	FloatBuffer getVertices(int mesh) {
+		return vertices[mesh];
+	}
+
+	ShortBuffer getIndices(int mesh) {
+		return indices[mesh];
+	}
+
+	FloatBuffer getColors(int mesh) {
+		return colors[mesh];
+	}
+
+	/**
+	 * @return true if this binary was produced from the given .obj file and libraries
+	 */
+	boolean isBuiltFrom(Fingerprint obj) {
+		return source.equals(obj);
+	}
+
+	/**
+	 * Writes the meshes, in order, using the binary format
+	 * @param source fingerprint of the .obj (and libraries) the meshes were parsed from
+	 */
+	static void write(List<MeshData> meshes, Fingerprint source, OutputStream out) throws IOException {
+		int size = HEADER_SIZE + ENTRY_SIZE * meshes.size();
+		for (MeshData m : meshes) {
+			size += 4 * m.getVertices().length + align4(2 * m.getIndices().length) + 4 * colorsOf(m).length;
+		}
+
+		ByteBuffer bb = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		bb.position(HEADER_SIZE);
+		for (MeshData m : meshes) {
+			bb.putInt(m.getVertices().length);
+			bb.putInt(m.getIndices().length);
+			bb.putInt(colorsOf(m).length);
+		}
+		for (MeshData m : meshes) {
+			for (float v : m.getVertices()) bb.putFloat(v);
+			for (short i : m.getIndices()) bb.putShort(i);
+			if ((m.getIndices().length & 1) != 0) bb.putShort((short) 0);
+			for (float c : colorsOf(m)) bb.putFloat(c);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(bb.array(), HEADER_SIZE, size - HEADER_SIZE);
+
+		bb.position(0);
+		bb.putInt(MAGIC);
+		bb.putInt(VERSION);
+		bb.putInt(source.length);
+		bb.putInt(source.crc);
+		bb.putInt(meshes.size());
+		bb.putInt((int) crc.getValue());
+
+		out.write(bb.array());
+	}
+
+	/**
+	 * Wraps the content of a binary mesh, the returned buffers are views on data
+	 * @param data the whole file, ideally memory-mapped or direct
+	 * @throws IOException if the file is truncated, corrupted or of another version
+	 */
+	static BinaryMesh read(ByteBuffer data) throws IOException {
+		ByteBuffer bb = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		bb.position(0);
+		if (bb.remaining() < HEADER_SIZE || bb.getInt() != MAGIC) {
+			throw new IOException("Not a binary mesh");
+		}
+		int version = bb.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary mesh version: " + version);
+		}
+		Fingerprint source = new Fingerprint(bb.getInt(), bb.getInt());
+		int meshCount = bb.getInt();
+		int payloadCrc = bb.getInt();
+		if (meshCount < 0 || bb.remaining() < (long) meshCount * ENTRY_SIZE) {
+			throw new IOException("Truncated binary mesh");
+		}
+		if (payloadCrc != crc32(bb)) {
+			throw new IOException("Corrupted binary mesh");
+		}
+
+		BinaryMesh mesh = new BinaryMesh(source, meshCount);
+		int offset = HEADER_SIZE + ENTRY_SIZE * meshCount;
+		for (int i = 0; i < meshCount; ++i) {
+			int entry = HEADER_SIZE + ENTRY_SIZE * i;
+			int nbVertices = bb.getInt(entry);
+			int nbIndices = bb.getInt(entry + 4);
+			int nbColors = bb.getInt(entry + 8);
+			if (nbVertices < 0 || nbIndices < 0 || nbColors < 0 ||
+					(long) offset + 4L * nbVertices + align4(2L * nbIndices) + 4L * nbColors > bb.limit()) {
+				throw new IOException("Truncated binary mesh");
+			}
+			mesh.vertices[i] = slice(bb, offset, 4 * nbVertices).asFloatBuffer();
+			offset += 4 * nbVertices;
+			mesh.indices[i] = slice(bb, offset, 2 * nbIndices).asShortBuffer();
+			offset += align4(2 * nbIndices);
+			mesh.colors[i] = slice(bb, offset, 4 * nbColors).asFloatBuffer();
+			offset += 4 * nbColors;
+		}
+		return mesh;
+	}
+
+	private static float[] colorsOf(MeshData m) {
+		return m.getColors() != null ? m.getColors() : m.getColor();
+	}
+
+	private static ByteBuffer slice(ByteBuffer bb, int offset, int length) {
+		ByteBuffer tmp = bb.duplicate();
+		tmp.limit(offset + length);
+		tmp.position(offset);
+		ByteBuffer slice = tmp.slice().order(ByteOrder.LITTLE_ENDIAN);
+		if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+			return slice;
+		}
+		// GL needs native order, we have to copy on big endian hosts
+		ByteBuffer copy = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+		while (slice.remaining() >= 4) copy.putInt(slice.getInt());
+		while (slice.hasRemaining()) copy.put(slice.get());
+		copy.position(0);
+		return copy;
+	}
+
+	private static int crc32(ByteBuffer bb) {
+		// CRC32.update(ByteBuffer) is only available from API 26
+		ByteBuffer tmp = bb.duplicate();
+		tmp.position(HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		while (tmp.hasRemaining()) {
+			int n = Math.min(chunk.length, tmp.remaining());
+			tmp.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+		return (int) crc.getValue();
+	}
+
+	private static int align4(int size) {
+		return (size + 3) & ~3;
+	}
+
+	private static long align4(long size) {
+		return (size + 3) & ~3L;
+	}
+
+	/**
+	 * Identifies the .obj a binary mesh was built from, used to detect stale binaries
+	 */
+	static final class Fingerprint {
+
+		final int length;
+		final int crc;
+
+		Fingerprint(int length, int crc) {
+			this.length = length;
+			this.crc = crc;
+		}
+
+		/**
+		 * Fingerprint of a model and of the material libraries it references, so that
+		 * editing a .mtl also makes the binary stale. Each file contributes its content
+		 * and its length, a missing library contributes nothing
+		 * @param libraries where the libraries are, null to only cover the .obj
+		 */
+		static Fingerprint of(byte[] obj, MaterialLibrary.Source libraries) throws IOException {
+			CRC32 crc = new CRC32();
+			crc.update(obj, 0, obj.length);
+			updateLength(crc, obj.length);
+			int length = obj.length;
+			if (libraries != null) {
+				byte[] chunk = new byte[8192];
+				for (String fileName : ObjParser.materialLibraries(obj)) {
+					try (InputStream in = libraries.open(fileName)) {
+						int libraryLength = 0, n;
+						while ((n = in.read(chunk)) != -1) {
+							crc.update(chunk, 0, n);
+							libraryLength += n;
+						}
+						updateLength(crc, libraryLength);
+						length += libraryLength;
+					} catch (FileNotFoundException e) {
+						// ignored when parsing too
+					}
+				}
+			}
+			return new Fingerprint(length, (int) crc.getValue());
+		}
+
+		private static void updateLength(CRC32 crc, int length) {
+			for (int shift = 0; shift < 32; shift += 8) {
+				crc.update(length >>> shift);
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Fingerprint)) return false;
+			Fingerprint that = (Fingerprint) o;
+			return length == that.length && crc == that.crc;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * length + crc;
+		}
+	}
+}
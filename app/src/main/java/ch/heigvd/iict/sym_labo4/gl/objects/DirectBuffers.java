@@ -0,0 +1,35 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Project: Labo4
+ * Copies of arrays into direct buffers in native order, as needed by OpenGL.
+ * Pure Java, see the benchmarks
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class DirectBuffers {
+
+	private DirectBuffers() { }
+
+	static FloatBuffer of(float[] values) {
+		// a float is 4 bytes
+		FloatBuffer fb = ByteBuffer.allocateDirect(values.length * 4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		fb.put(values);
+		fb.position(0);
+		return fb;
+	}
+
+	static ShortBuffer of(short[] values) {
+		// a short is 2 bytes
+		ShortBuffer sb = ByteBuffer.allocateDirect(values.length * 2)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		sb.put(values);
+		sb.position(0);
+		return sb;
+	}
+}
@@ -0,0 +1,68 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.util.Arrays;
+
+/**
+ * Project: Labo4
+ * Growable list of primitive floats, used while parsing models to avoid boxing
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class FloatArray {
+
+	private float[] data;
+	private int size = 0;
+
+	FloatArray() {
+		this(64);
+	}
+
+	FloatArray(int initialCapacity) {
+		data = new float[Math.max(initialCapacity, 4)];
+	}
+
+	void add(float value) {
+		if (size == data.length) grow(size + 1);
+		data[size++] = value;
+	}
+
+	void add(float x, float y, float z) {
+		if (size + 3 > data.length) grow(size + 3);
+		data[size++] = x;
+		data[size++] = y;
+		data[size++] = z;
+	}
+
+	/**
+	 * Appends the values of other from index from (inclusive) to index to (exclusive)
+	 */
+	void addAll(FloatArray other, int from, int to) {
+		int n = to - from;
+		if (size + n > data.length) grow(size + n);
+		System.arraycopy(other.data, from, data, size, n);
+		size += n;
+	}
+
+	float get(int index) {
+		return data[index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return a copy of the content, trimmed to the current size
+	 */
+	float[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	private void grow(int minCapacity) {
+		int newCapacity = Math.max(data.length << 1, minCapacity);
+		data = Arrays.copyOf(data, newCapacity);
+	}
+}
@@ -0,0 +1,68 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.util.Arrays;
+
+/**
+ * Project: Labo4
+ * Growable list of primitive ints, used while parsing models to avoid boxing
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class IntArray {
+
+	private int[] data;
+	private int size = 0;
+
+	IntArray() {
+		this(64);
+	}
+
+	IntArray(int initialCapacity) {
+		data = new int[Math.max(initialCapacity, 4)];
+	}
+
+	void add(int value) {
+		if (size == data.length) grow(size + 1);
+		data[size++] = value;
+	}
+
+	void add(int a, int b, int c) {
+		if (size + 3 > data.length) grow(size + 3);
+		data[size++] = a;
+		data[size++] = b;
+		data[size++] = c;
+	}
+
+	/**
+	 * Appends the values of other from index from (inclusive) to index to (exclusive)
+	 */
+	void addAll(IntArray other, int from, int to) {
+		int n = to - from;
+		if (size + n > data.length) grow(size + n);
+		System.arraycopy(other.data, from, data, size, n);
+		size += n;
+	}
+
+	int get(int index) {
+		return data[index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return a copy of the content, trimmed to the current size
+	 */
+	int[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+
+	private void grow(int minCapacity) {
+		int newCapacity = Math.max(data.length << 1, minCapacity);
+		data = Arrays.copyOf(data, newCapacity);
+	}
+}
@@ -0,0 +1,108 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.util.Random;
+
+/**
+ * Project: Labo4
+ * Material of an .obj group, as defined by a "newmtl" section of its .mtl library.
+ * Only the diffuse color and the opacity are used for drawing. Immutable (see Builder),
+ * it is shared by all the models using it (see MaterialLibrary)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class Material {
+
+	private final String name;
+	private final float[] ka;
+	private final float[] kd;
+	private final float[] ks;
+	// "d" (dissolve), 1 is opaque
+	private final float opacity;
+
+	private Material(Builder builder) {
+		this.name = builder.name;
+		this.ka = builder.ka.clone();
+		this.kd = builder.kd.clone();
+		this.ks = builder.ks.clone();
+		this.opacity = builder.opacity;
+	}
+
+	/**
+	 * Material used when a group refers to no known material. Its colors only depend
+	 * on the name, so that a model looks the same at each load
+	 */
+	static Material fallback(String name) {
+		Random r = new Random(name != null ? name.hashCode() : 0);
+		return new Builder(name)
+				.ka(r.nextFloat(), r.nextFloat(), r.nextFloat())
+				.kd(r.nextFloat(), r.nextFloat(), r.nextFloat())
+				.ks(r.nextFloat(), r.nextFloat(), r.nextFloat())
+				.build();
+	}
+
+	String getName() {
+		return name;
+	}
+
+	float[] getKa() {
+		return ka.clone();
+	}
+
+	float[] getKd() {
+		return kd.clone();
+	}
+
+	float[] getKs() {
+		return ks.clone();
+	}
+
+	float getOpacity() {
+		return opacity;
+	}
+
+	/**
+	 * @return the flat color of the material (diffuse color and opacity), as r, g, b, a
+	 */
+	float[] getColor() {
+		return new float[] { kd[0], kd[1], kd[2], opacity };
+	}
+
+	/**
+	 * Collects the statements of a "newmtl" section, the defaults are those of the .mtl format
+	 */
+	static final class Builder {
+
+		private final String name;
+		private float[] ka = { 0.2f, 0.2f, 0.2f };
+		private float[] kd = { 0.8f, 0.8f, 0.8f };
+		private float[] ks = { 1.0f, 1.0f, 1.0f };
+		private float opacity = 1.0f;
+
+		Builder(String name) {
+			this.name = name;
+		}
+
+		Builder ka(float r, float g, float b) {
+			ka = new float[] { r, g, b };
+			return this;
+		}
+
+		Builder kd(float r, float g, float b) {
+			kd = new float[] { r, g, b };
+			return this;
+		}
+
+		Builder ks(float r, float g, float b) {
+			ks = new float[] { r, g, b };
+			return this;
+		}
+
+		Builder opacity(float opacity) {
+			this.opacity = opacity;
+			return this;
+		}
+
+		Material build() {
+			return new Material(this);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project: Labo4
+ * Loads the .mtl material libraries referenced by the models ("mtllib"). The libraries are
+ * parsed once and cached for the whole process, all the models using a library share
+ * its materials. Material names are case insensitive, like in ObjParser before
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class MaterialLibrary {
+
+	/**
+	 * Where the libraries of a model are found, e.g. the assets or the directory of the model
+	 */
+	interface Source {
+		/**
+		 * @return the content of the library, closed by the caller
+		 * @throws FileNotFoundException if there is no such library
+		 */
+		InputStream open(String fileName) throws IOException;
+
+		/**
+		 * @return the key of the library in the cache, unique among all the sources
+		 */
+		default String key(String fileName) {
+			return fileName;
+		}
+	}
+
+	private static final Map<String, Map<String, Material>> cache = new ConcurrentHashMap<>();
+
+	private MaterialLibrary() { }
+
+	/**
+	 * @return the materials of the library by name, from the cache once loaded.
+	 * Empty if the library does not exist
+	 */
+	static Map<String, Material> load(Source source, String fileName) throws IOException {
+		String key = source.key(fileName);
+		Map<String, Material> materials = cache.get(key);
+		if (materials != null) return materials;
+
+		try (InputStream in = source.open(fileName)) {
+			materials = parse(in);
+		} catch (FileNotFoundException e) {
+			// not cached, it may be added later (e.g. next to a converted model)
+			return Collections.emptyMap();
+		}
+		// if loaded concurrently, the first one wins
+		Map<String, Material> previous = cache.putIfAbsent(key, materials);
+		return previous != null ? previous : materials;
+	}
+
+	/**
+	 * Forgets all the cached libraries
+	 */
+	static void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Parses the "newmtl", "Ka", "Kd", "Ks", "d" and "Tr" statements of a library,
+	 * the others are ignored. The stream is not closed
+	 */
+	static Map<String, Material> parse(InputStream in) throws IOException {
+		Map<String, Material> materials = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		Material.Builder current = null;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] parts = line.trim().split("\\s+");
+			if (parts.length < 2) continue;
+			if (parts[0].equals("newmtl")) {
+				add(materials, current);
+				current = new Material.Builder(parts[1]);
+			} else if (current == null) {
+				continue;
+			} else if (parts[0].equals("Ka") && parts.length >= 4) {
+				current.ka(Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3]));
+			} else if (parts[0].equals("Kd") && parts.length >= 4) {
+				current.kd(Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3]));
+			} else if (parts[0].equals("Ks") && parts.length >= 4) {
+				current.ks(Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3]));
+			} else if (parts[0].equals("d")) {
+				current.opacity(Float.parseFloat(parts[1]));
+			} else if (parts[0].equals("Tr")) {
+				current.opacity(1f - Float.parseFloat(parts[1]));
+			}
+		}
+		add(materials, current);
+		return Collections.unmodifiableMap(materials);
+	}
+
+	private static void add(Map<String, Material> materials, Material.Builder builder) {
+		if (builder == null) return;
+		Material material = builder.build();
+		materials.put(material.getName(), material);
+	}
+}
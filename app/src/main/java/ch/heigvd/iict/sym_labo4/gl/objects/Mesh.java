@@ -1,7 +1,5 @@
 package ch.heigvd.iict.sym_labo4.gl.objects;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
@@ -60,26 +58,32 @@ public class Mesh {
 	}
 
     protected void setVertices(float[] vertices) {
-		// a float is 4 bytes, therefore we multiply the number if
-		// vertices with 4.
-		ByteBuffer vbb = ByteBuffer.allocateDirect(vertices.length * 4);
-		vbb.order(ByteOrder.nativeOrder());
-		verticesBuffer = vbb.asFloatBuffer();
-		verticesBuffer.put(vertices);
-		verticesBuffer.position(0);
+		verticesBuffer = DirectBuffers.of(vertices);
 	}
 
     protected void setIndices(short[] indices) {
-		// short is 2 bytes, therefore we multiply the number if
-		// vertices with 2.
-		ByteBuffer ibb = ByteBuffer.allocateDirect(indices.length * 2);
-		ibb.order(ByteOrder.nativeOrder());
-		indicesBuffer = ibb.asShortBuffer();
-		indicesBuffer.put(indices);
-		indicesBuffer.position(0);
+		indicesBuffer = DirectBuffers.of(indices);
 		numOfIndices = indices.length;
 	}
 
+	/*
+	 * Uses the given buffer as-is, it must be direct and in native order
+	 * (e.g. a slice of a memory-mapped BinaryMesh)
+	 */
+	void setVertices(FloatBuffer vertices) {
+		verticesBuffer = vertices;
+		verticesBuffer.position(0);
+	}
+
+	/*
+	 * Uses the given buffer as-is, it must be direct and in native order
+	 */
+	void setIndices(ShortBuffer indices) {
+		indicesBuffer = indices;
+		indicesBuffer.position(0);
+		numOfIndices = indices.remaining();
+	}
+
 	protected void setColor(float red, float green, float blue, float alpha) {
 		// Setting the flat color.
 		rgba[0] = red;
@@ -89,11 +93,30 @@ public class Mesh {
 	}
 
     protected void setColors(float[] colors) {
-		// float has 4 bytes.
-		ByteBuffer cbb = ByteBuffer.allocateDirect(colors.length * 4);
-		cbb.order(ByteOrder.nativeOrder());
-		colorBuffer = cbb.asFloatBuffer();
-		colorBuffer.put(colors);
+		colorBuffer = DirectBuffers.of(colors);
+	}
+
+	/*
+	 * Uses the given buffer as-is, it must be direct and in native order
+	 */
+	void setColors(FloatBuffer colors) {
+		colorBuffer = colors;
 		colorBuffer.position(0);
 	}
+
+	FloatBuffer getVerticesBuffer() {
+		return verticesBuffer;
+	}
+
+	ShortBuffer getIndicesBuffer() {
+		return indicesBuffer;
+	}
+
+	FloatBuffer getColorBuffer() {
+		return colorBuffer;
+	}
+
+	float[] getColor() {
+		return rgba;
+	}
 }
@@ -0,0 +1,363 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Project: Labo4
+ * Several meshes merged into a single interleaved vertex buffer and a single index buffer,
+ * so that they are drawn with one call. Each vertex is stored as x, y, z (floats)
+ * followed by its color as r, g, b, a (unsigned bytes).
+ * The indices are unsigned shorts, so a batch holds at most MAX_VERTICES vertices, unless
+ * 32-bit indices are supported (OES_element_index_uint) and the batches merged with them.
+ * The GL states are set once for all the batches, see begin() and end()
+ * (or their GLES20 counterparts for the programmable pipeline)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class MeshBatch {
+
+	static final int STRIDE = 3 * 4 + 4;
+	static final int COLOR_OFFSET = 3 * 4;
+
+	// with unsigned short indices
+	static final int MAX_VERTICES = 0xFFFF + 1;
+
+	private static final String UINT_EXTENSION = "GL_OES_element_index_uint";
+
+	// Interleaved vertices and colors, and a view of it starting at the first color
+	private final ByteBuffer vertices;
+	private final ByteBuffer colors;
+
+	// ShortBuffer or IntBuffer, depending on indexType
+	private final Buffer indices;
+	private final int indexType;
+	private final int indexSize;
+	private final int numOfIndices;
+	private final int numOfVertices;
+
+	// GPU copies of the buffers, only valid when useBufferObjects is set
+	private static final int VERTICES_BO = 0, INDICES_BO = 1;
+	private final int[] bufferObjects = new int[2];
+	private boolean useBufferObjects = false;
+
+	private MeshBatch(List<Mesh> meshes) {
+		int nbVertices = 0, nbIndices = 0;
+		for (Mesh m : meshes) {
+			nbVertices += m.getVerticesBuffer().capacity() / 3;
+			nbIndices += m.getIndicesBuffer().capacity();
+		}
+
+		vertices = ByteBuffer.allocateDirect(nbVertices * STRIDE).order(ByteOrder.nativeOrder());
+		indexType = GLES20.GL_UNSIGNED_SHORT;
+		indexSize = 2;
+		ShortBuffer shortIndices = ByteBuffer.allocateDirect(nbIndices * indexSize).order(ByteOrder.nativeOrder()).asShortBuffer();
+		indices = shortIndices;
+
+		int base = 0;
+		for (Mesh m : meshes) {
+			FloatBuffer v = m.getVerticesBuffer();
+			FloatBuffer c = m.getColorBuffer();
+			float[] rgba = m.getColor();
+			int n = v.capacity() / 3;
+			for (int i = 0; i < n; ++i) {
+				vertices.putFloat(v.get(3 * i));
+				vertices.putFloat(v.get(3 * i + 1));
+				vertices.putFloat(v.get(3 * i + 2));
+				for (int k = 0; k < 4; ++k) {
+					vertices.put(toUnsignedByte(c != null ? c.get(4 * i + k) : rgba[k]));
+				}
+			}
+			ShortBuffer ind = m.getIndicesBuffer();
+			for (int i = 0; i < ind.capacity(); ++i) {
+				shortIndices.put((short) ((ind.get(i) & 0xFFFF) + base));
+			}
+			base += n;
+		}
+		vertices.position(0);
+		indices.position(0);
+		colors = colorsOf(vertices);
+
+		numOfVertices = nbVertices;
+		numOfIndices = nbIndices;
+	}
+
+	private MeshBatch(List<MeshBatch> batches, int nbVertices, int nbIndices) {
+		vertices = ByteBuffer.allocateDirect(nbVertices * STRIDE).order(ByteOrder.nativeOrder());
+		indexType = GLES20.GL_UNSIGNED_INT;
+		indexSize = 4;
+		IntBuffer intIndices = ByteBuffer.allocateDirect(nbIndices * indexSize).order(ByteOrder.nativeOrder()).asIntBuffer();
+		indices = intIndices;
+
+		int base = 0;
+		for (MeshBatch b : batches) {
+			// the interleaved vertices are copied as they are, only the indices are rebased
+			vertices.put(b.vertices.duplicate());
+			for (int i = 0; i < b.numOfIndices; ++i) {
+				int index = b.indices instanceof ShortBuffer
+						? ((ShortBuffer) b.indices).get(i) & 0xFFFF
+						: ((IntBuffer) b.indices).get(i);
+				intIndices.put(index + base);
+			}
+			base += b.numOfVertices;
+		}
+		vertices.position(0);
+		indices.position(0);
+		colors = colorsOf(vertices);
+
+		numOfVertices = nbVertices;
+		numOfIndices = nbIndices;
+	}
+
+	/**
+	 * Merges the meshes, in order, into as few batches as possible, with 16-bit indices
+	 */
+	static List<MeshBatch> build(List<Mesh> meshes) {
+		List<MeshBatch> batches = new ArrayList<>();
+		List<Mesh> current = new ArrayList<>();
+		int nbVertices = 0;
+		for (Mesh m : meshes) {
+			int n = m.getVerticesBuffer().capacity() / 3;
+			if (nbVertices + n > MAX_VERTICES && !current.isEmpty()) {
+				batches.add(new MeshBatch(current));
+				current.clear();
+				nbVertices = 0;
+			}
+			current.add(m);
+			nbVertices += n;
+		}
+		if (!current.isEmpty()) {
+			batches.add(new MeshBatch(current));
+		}
+		return batches;
+	}
+
+	/**
+	 * Merges batches built by build(), in order, into a single batch with 32-bit indices.
+	 * The vertices are copied in bulk, so it is cheap enough to be done on the GL thread, once
+	 * supportsUintIndices() is known. Only to be drawn if supportsUintIndices()
+	 */
+	static MeshBatch merge(List<MeshBatch> batches) {
+		int nbVertices = 0, nbIndices = 0;
+		for (MeshBatch b : batches) {
+			nbVertices += b.numOfVertices;
+			nbIndices += b.numOfIndices;
+		}
+		return new MeshBatch(batches, nbVertices, nbIndices);
+	}
+
+	// view of the interleaved vertices starting at the first color
+	private static ByteBuffer colorsOf(ByteBuffer vertices) {
+		ByteBuffer tmp = vertices.duplicate().order(ByteOrder.nativeOrder());
+		tmp.position(COLOR_OFFSET);
+		return tmp.slice().order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * @return whether the current context can draw with 32-bit indices (OpenGL ES 1.x)
+	 */
+	static boolean supportsUintIndices(GL10 gl) {
+		String extensions = gl.glGetString(GL10.GL_EXTENSIONS);
+		return extensions != null && extensions.contains(UINT_EXTENSION);
+	}
+
+	/**
+	 * Same as supportsUintIndices(), in an OpenGL ES 2.0 context (core in OpenGL ES 3.0)
+	 */
+	static boolean supportsUintIndicesGLES20() {
+		String version = GLES20.glGetString(GLES20.GL_VERSION);
+		if (version != null && version.startsWith("OpenGL ES ") && !version.startsWith("OpenGL ES 2.")) {
+			return true;
+		}
+		String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+		return extensions != null && extensions.contains(UINT_EXTENSION);
+	}
+
+	int getNumOfVertices() {
+		return numOfVertices;
+	}
+
+	int getNumOfIndices() {
+		return numOfIndices;
+	}
+
+	/**
+	 * Sets the GL states shared by all batches
+	 */
+	static void begin(GL10 gl) {
+		// Counter-clockwise winding, back faces are culled
+		gl.glFrontFace(GL10.GL_CCW);
+		gl.glEnable(GL10.GL_CULL_FACE);
+		gl.glCullFace(GL10.GL_BACK);
+		gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+		gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
+	}
+
+	/**
+	 * Restores the GL states changed by begin()
+	 */
+	static void end(GL10 gl) {
+		gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
+		gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+		gl.glDisable(GL10.GL_CULL_FACE);
+	}
+
+	/**
+	 * Draws the whole batch, between begin() and end()
+	 */
+	void draw(GL10 gl) {
+		if (useBufferObjects) {
+			GL11 gl11 = (GL11) gl;
+			gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, bufferObjects[VERTICES_BO]);
+			gl11.glVertexPointer(3, GL10.GL_FLOAT, STRIDE, 0);
+			gl11.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, STRIDE, COLOR_OFFSET);
+			gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, bufferObjects[INDICES_BO]);
+			gl11.glDrawElements(GL10.GL_TRIANGLES, numOfIndices, indexType, 0);
+			gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+			gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+		} else {
+			gl.glVertexPointer(3, GL10.GL_FLOAT, STRIDE, vertices);
+			gl.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, STRIDE, colors);
+			gl.glDrawElements(GL10.GL_TRIANGLES, numOfIndices, indexType, indices);
+		}
+	}
+
+	/**
+	 * Copies the buffers into GPU buffer objects, used by draw() from now on.
+	 * Must be called from the GL thread, again after each loss of the EGL context.
+	 * Nothing is done (client-side arrays are kept) if buffer objects are not supported
+	 */
+	void uploadBuffers(GL10 gl) {
+		if (useBufferObjects || !supportsBufferObjects(gl)) return;
+		GL11 gl11 = (GL11) gl;
+
+		gl11.glGenBuffers(bufferObjects.length, bufferObjects, 0);
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, bufferObjects[VERTICES_BO]);
+		gl11.glBufferData(GL11.GL_ARRAY_BUFFER, vertices.capacity(), vertices, GL11.GL_STATIC_DRAW);
+		gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, bufferObjects[INDICES_BO]);
+		gl11.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER, indices.capacity() * indexSize, indices, GL11.GL_STATIC_DRAW);
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+		gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+		useBufferObjects = true;
+		if (gl11.glGetError() != GL10.GL_NO_ERROR) {
+			// e.g. out of memory, we keep drawing from the client-side arrays
+			releaseBuffers(gl);
+		}
+	}
+
+	/**
+	 * Deletes the GPU buffer objects, draw() goes back to client-side arrays.
+	 * Must be called from the GL thread, while the context that created them is current
+	 */
+	void releaseBuffers(GL10 gl) {
+		if (!useBufferObjects) return;
+		((GL11) gl).glDeleteBuffers(bufferObjects.length, bufferObjects, 0);
+		discardBuffers();
+	}
+
+	/**
+	 * Forgets the GPU buffer objects without deleting them, to be used when the
+	 * EGL context has been lost (they were destroyed with it)
+	 */
+	void discardBuffers() {
+		useBufferObjects = false;
+		bufferObjects[VERTICES_BO] = bufferObjects[INDICES_BO] = 0;
+	}
+
+	/*
+	 * Every Android GL implements GL11, but buffer objects need an OpenGL ES 1.1 context
+	 */
+	static boolean supportsBufferObjects(GL10 gl) {
+		if (!(gl instanceof GL11)) return false;
+		String version = gl.glGetString(GL10.GL_VERSION);
+		return version != null &&
+				!version.startsWith("OpenGL ES-CM 1.0") &&
+				!version.startsWith("OpenGL ES-CL 1.0");
+	}
+
+	/**
+	 * Same as begin(), for the programmable pipeline
+	 */
+	static void beginGLES20(int positionAttrib, int colorAttrib) {
+		GLES20.glFrontFace(GLES20.GL_CCW);
+		GLES20.glEnable(GLES20.GL_CULL_FACE);
+		GLES20.glCullFace(GLES20.GL_BACK);
+		GLES20.glEnableVertexAttribArray(positionAttrib);
+		GLES20.glEnableVertexAttribArray(colorAttrib);
+	}
+
+	/**
+	 * Same as end(), for the programmable pipeline
+	 */
+	static void endGLES20(int positionAttrib, int colorAttrib) {
+		GLES20.glDisableVertexAttribArray(colorAttrib);
+		GLES20.glDisableVertexAttribArray(positionAttrib);
+		GLES20.glDisable(GLES20.GL_CULL_FACE);
+	}
+
+	/**
+	 * Draws the whole batch, between beginGLES20() and endGLES20(), with the
+	 * given attributes of the current program
+	 */
+	void drawGLES20(int positionAttrib, int colorAttrib) {
+		if (useBufferObjects) {
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferObjects[VERTICES_BO]);
+			GLES20.glVertexAttribPointer(positionAttrib, 3, GLES20.GL_FLOAT, false, STRIDE, 0);
+			GLES20.glVertexAttribPointer(colorAttrib, 4, GLES20.GL_UNSIGNED_BYTE, true, STRIDE, COLOR_OFFSET);
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, bufferObjects[INDICES_BO]);
+			GLES20.glDrawElements(GLES20.GL_TRIANGLES, numOfIndices, indexType, 0);
+			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		} else {
+			GLES20.glVertexAttribPointer(positionAttrib, 3, GLES20.GL_FLOAT, false, STRIDE, vertices);
+			GLES20.glVertexAttribPointer(colorAttrib, 4, GLES20.GL_UNSIGNED_BYTE, true, STRIDE, colors);
+			GLES20.glDrawElements(GLES20.GL_TRIANGLES, numOfIndices, indexType, indices);
+		}
+	}
+
+	/**
+	 * Same as uploadBuffers(), in an OpenGL ES 2.0 context (buffer objects are always supported)
+	 */
+	void uploadBuffersGLES20() {
+		if (useBufferObjects) return;
+
+		GLES20.glGenBuffers(bufferObjects.length, bufferObjects, 0);
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferObjects[VERTICES_BO]);
+		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertices.capacity(), vertices, GLES20.GL_STATIC_DRAW);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, bufferObjects[INDICES_BO]);
+		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.capacity() * indexSize, indices, GLES20.GL_STATIC_DRAW);
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+		useBufferObjects = true;
+		if (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+			releaseBuffersGLES20();
+		}
+	}
+
+	/**
+	 * Same as releaseBuffers(), in an OpenGL ES 2.0 context
+	 */
+	void releaseBuffersGLES20() {
+		if (!useBufferObjects) return;
+		GLES20.glDeleteBuffers(bufferObjects.length, bufferObjects, 0);
+		discardBuffers();
+	}
+
+	private static byte toUnsignedByte(float component) {
+		if (component <= 0f) return 0;
+		if (component >= 1f) return (byte) 0xFF;
+		return (byte) (component * 255f + 0.5f);
+	}
+}
@@ -0,0 +1,143 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Project: Labo4
+ * Offline converter from .obj to BinaryMesh, runs on a plain JVM (see the convertMeshes gradle task).
+ * Usage: MeshConverter [--no-optimize | --check] <file.obj | directory>...
+ * Each model.obj is converted into model.symm, next to it. The meshes are optimised for the GPU
+ * (see MeshOptimizer) unless --no-optimize is given, the ACMR before and after is reported.
+ * With --check, nothing is converted: the models whose .symm is missing or was not built from
+ * the current .obj and .mtl libraries are listed, and the exit status is 1 if there are any (see the checkMeshes
+ * gradle task), the application trusts the .symm it finds
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class MeshConverter {
+
+	private MeshConverter() { }
+
+	public static void main(String[] args) throws IOException {
+		boolean optimize = args.length == 0 || !args[0].equals("--no-optimize");
+		boolean check = args.length > 0 && args[0].equals("--check");
+		int first = optimize && !check ? 0 : 1;
+		if (args.length <= first) {
+			System.err.println("Usage: MeshConverter [--no-optimize | --check] <file.obj | directory>...");
+			System.exit(1);
+		}
+		int stale = 0;
+		for (int i = first; i < args.length; ++i) {
+			String arg = args[i];
+			File f = new File(arg);
+			File[] models = f.isDirectory() ?
+					f.listFiles((dir, name) -> name.endsWith(".obj")) :
+					new File[] { f };
+			if (models == null) continue;
+			for (File obj : models) {
+				if (check) {
+					if (!isUpToDate(obj)) stale++;
+				} else {
+					convert(obj, optimize);
+				}
+			}
+		}
+		if (stale > 0) {
+			System.err.println(stale + " binary mesh(es) to rebuild, run the convertMeshes task");
+			System.exit(1);
+		}
+	}
+
+	private static boolean isUpToDate(File obj) throws IOException {
+		File bin = binaryOf(obj);
+		if (!bin.isFile()) {
+			System.err.println(obj + ": " + bin + " is missing");
+			return false;
+		}
+		try {
+			BinaryMesh mesh = BinaryMesh.read(ByteBuffer.wrap(readFully(bin)));
+			if (mesh.isBuiltFrom(BinaryMesh.Fingerprint.of(readFully(obj), librariesNextTo(obj)))) {
+				return true;
+			}
+			System.err.println(obj + ": " + bin + " is stale");
+		} catch (IOException e) {
+			System.err.println(obj + ": " + bin + " is invalid (" + e.getMessage() + ")");
+		}
+		return false;
+	}
+
+	private static MaterialLibrary.Source librariesNextTo(File obj) {
+		File dir = obj.getAbsoluteFile().getParentFile();
+		return new MaterialLibrary.Source() {
+			@Override
+			public InputStream open(String fileName) throws IOException {
+				return new FileInputStream(new File(dir, fileName));
+			}
+
+			@Override
+			public String key(String fileName) {
+				return new File(dir, fileName).getPath();
+			}
+		};
+	}
+
+	private static File binaryOf(File obj) {
+		String name = obj.getName();
+		return new File(obj.getParentFile(), name.substring(0, name.lastIndexOf('.')) + BinaryMesh.EXTENSION);
+	}
+
+	private static void convert(File obj, boolean optimize) throws IOException {
+		byte[] content = readFully(obj);
+		MaterialLibrary.Source libraries = librariesNextTo(obj);
+		BinaryMesh.Fingerprint source = BinaryMesh.Fingerprint.of(content, libraries);
+		List<MeshData> meshes = ObjParser.parseParallel(content, libraries);
+		if (optimize) {
+			String before = describe(meshes);
+			for (MeshData m : meshes) {
+				MeshOptimizer.optimize(m);
+			}
+			System.out.println(obj + ": " + before + " -> " + describe(meshes));
+		}
+
+		File out = binaryOf(obj);
+		try (OutputStream os = new FileOutputStream(out)) {
+			BinaryMesh.write(meshes, source, os);
+		}
+		System.out.println(obj + " -> " + out + " (" + meshes.size() + " meshes, " + out.length() + " bytes)");
+	}
+
+	/*
+	 * Number of vertices and ACMR of the whole model
+	 */
+	private static String describe(List<MeshData> meshes) {
+		int vertices = 0, triangles = 0;
+		float misses = 0f;
+		for (MeshData m : meshes) {
+			int n = m.getIndices().length / 3;
+			vertices += m.getVertices().length / 3;
+			triangles += n;
+			misses += MeshOptimizer.acmr(m.getIndices(), MeshOptimizer.CACHE_SIZE) * n;
+		}
+		return String.format(Locale.US, "%d vertices, ACMR %.3f", vertices, misses / Math.max(1, triangles));
+	}
+
+	private static byte[] readFully(File f) throws IOException {
+		try (InputStream in = new FileInputStream(f)) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream((int) f.length());
+			byte[] chunk = new byte[8192];
+			int n;
+			while ((n = in.read(chunk)) != -1) {
+				bos.write(chunk, 0, n);
+			}
+			return bos.toByteArray();
+		}
+	}
+}
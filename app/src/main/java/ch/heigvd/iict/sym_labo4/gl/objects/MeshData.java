@@ -0,0 +1,54 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+/**
+ * Project: Labo4
+ * Raw content of a Mesh before its upload into direct buffers
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class MeshData {
+
+	float[] vertices = null;
+	short[] indices = null;
+	// per-vertex colors, null when the mesh has a flat color
+	float[] colors = null;
+	float[] color = null;
+	
+	void recenter(float mX, float mY, float mZ){
+		for(int i = 0; i < this.vertices.length; ++i){
+			if(i%3 == 0){
+				this.vertices[i] -= mX;
+			}
+			else if(i%3 == 1){
+				this.vertices[i] -= mY;
+			}
+			else if(i%3 == 2){
+				this.vertices[i] -= mZ;
+			}
+		}
+	}
+	
+	float[] getVertices() {
+		return vertices;
+	}
+	void setVertices(float[] vertices) {
+		this.vertices = vertices;
+	}
+	short[] getIndices() {
+		return indices;
+	}
+	void setIndices(short[] indices) {
+		this.indices = indices;
+	}
+	float[] getColors() {
+		return colors;
+	}
+	void setColors(float[] colors) {
+		this.colors = colors;
+	}
+	float[] getColor() {
+		return color;
+	}
+	void setColor(float[] color) {
+		this.color = color;
+	}
+}
@@ -0,0 +1,250 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.util.Arrays;
+
+/**
+ * Project: Labo4
+ * Optimisation of a MeshData for the GPU, without changing what is drawn:
+ *  - welding of the identical vertices (same position and color), degenerate triangles are dropped
+ *  - reordering of the triangles for the post-transform vertex cache ("Tipsify", Sander et al. 2007)
+ *  - reordering of the vertices in order of first use, for the vertex fetch
+ * The result is measured with the ACMR (average cache miss ratio: transformed vertices per triangle)
+ * of a FIFO cache of CACHE_SIZE entries, between 0.5 (best) and 3 (no reuse).
+ * Pure Java, run offline by MeshConverter so that the binary meshes are optimised once
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class MeshOptimizer {
+
+	// post-transform cache entries assumed by the reordering and the ACMR,
+	// conservative for mobile GPUs
+	static final int CACHE_SIZE = 16;
+
+	private MeshOptimizer() { }
+
+	/**
+	 * Optimises the mesh in place (its arrays are replaced)
+	 */
+	static void optimize(MeshData mesh) {
+		weld(mesh);
+		int nbVertices = mesh.getVertices().length / 3;
+		mesh.setIndices(toShorts(reorderTriangles(toInts(mesh.getIndices()), nbVertices, CACHE_SIZE)));
+		reorderVertices(mesh);
+	}
+
+	/**
+	 * @return the average number of vertices transformed per triangle, with a FIFO cache of cacheSize
+	 */
+	static float acmr(short[] indices, int cacheSize) {
+		if (indices.length < 3) return 0f;
+		int[] cache = new int[cacheSize];
+		Arrays.fill(cache, -1);
+		int head = 0, misses = 0;
+		for (short s : indices) {
+			int v = s & 0xFFFF;
+			boolean hit = false;
+			for (int c : cache) {
+				if (c == v) {
+					hit = true;
+					break;
+				}
+			}
+			if (!hit) {
+				cache[head] = v;
+				head = (head + 1) % cacheSize;
+				misses++;
+			}
+		}
+		return misses / (float) (indices.length / 3);
+	}
+
+	/*
+	 * Merges the vertices with bit-identical positions and colors (if they have their own),
+	 * using an open addressing table of vertex indices
+	 */
+	static void weld(MeshData mesh) {
+		float[] vertices = mesh.getVertices();
+		float[] colors = mesh.getColors();
+		short[] indices = mesh.getIndices();
+		int nbVertices = vertices.length / 3;
+
+		int[] table = new int[Integer.highestOneBit(Math.max(nbVertices, 1) * 2) * 2];
+		Arrays.fill(table, -1);
+		int mask = table.length - 1;
+		int[] remap = new int[nbVertices];
+		float[] welded = new float[vertices.length];
+		float[] weldedColors = colors != null ? new float[colors.length] : null;
+		int nbWelded = 0;
+
+		for (int v = 0; v < nbVertices; ++v) {
+			int slot = hash(vertices, colors, v) & mask;
+			while (table[slot] != -1 && !sameVertex(welded, weldedColors, table[slot], vertices, colors, v)) {
+				slot = (slot + 1) & mask;
+			}
+			if (table[slot] == -1) {
+				table[slot] = nbWelded;
+				System.arraycopy(vertices, 3 * v, welded, 3 * nbWelded, 3);
+				if (colors != null) System.arraycopy(colors, 4 * v, weldedColors, 4 * nbWelded, 4);
+				nbWelded++;
+			}
+			remap[v] = table[slot];
+		}
+
+		IntArray kept = new IntArray(indices.length);
+		for (int t = 0; t + 2 < indices.length; t += 3) {
+			int a = remap[indices[t] & 0xFFFF];
+			int b = remap[indices[t + 1] & 0xFFFF];
+			int c = remap[indices[t + 2] & 0xFFFF];
+			if (a != b && b != c && a != c) {
+				kept.add(a, b, c);
+			}
+		}
+
+		mesh.setVertices(Arrays.copyOf(welded, 3 * nbWelded));
+		if (colors != null) mesh.setColors(Arrays.copyOf(weldedColors, 4 * nbWelded));
+		mesh.setIndices(toShorts(kept.toArray()));
+	}
+
+	/*
+	 * Tipsify: emits the triangles around a "fanning" vertex, then moves on to the most recently
+	 * used vertex that still has triangles and would stay in the cache while its fan is emitted
+	 */
+	static int[] reorderTriangles(int[] indices, int nbVertices, int cacheSize) {
+		int nbTriangles = indices.length / 3;
+
+		// triangles of each vertex (adjacency lists packed in one array)
+		int[] liveTriangles = new int[nbVertices];
+		for (int i = 0; i < 3 * nbTriangles; ++i) {
+			liveTriangles[indices[i]]++;
+		}
+		int[] offsets = new int[nbVertices + 1];
+		for (int v = 0; v < nbVertices; ++v) {
+			offsets[v + 1] = offsets[v] + liveTriangles[v];
+		}
+		int[] fill = Arrays.copyOf(offsets, nbVertices);
+		int[] adjacency = new int[3 * nbTriangles];
+		for (int i = 0; i < 3 * nbTriangles; ++i) {
+			adjacency[fill[indices[i]]++] = i / 3;
+		}
+
+		// time at which each vertex last entered the cache
+		int[] cacheTime = new int[nbVertices];
+		int time = cacheSize + 1;
+		boolean[] emitted = new boolean[nbTriangles];
+		int[] deadEnd = new int[3 * nbTriangles];
+		int deadEndSize = 0;
+		int[] candidates = new int[3 * nbTriangles];
+		int[] output = new int[3 * nbTriangles];
+		int out = 0;
+		int cursor = 0;
+
+		int fanning = nbTriangles > 0 ? 0 : -1;
+		while (fanning >= 0) {
+			int nbCandidates = 0;
+			for (int k = offsets[fanning]; k < offsets[fanning + 1]; ++k) {
+				int t = adjacency[k];
+				if (emitted[t]) continue;
+				for (int j = 0; j < 3; ++j) {
+					int v = indices[3 * t + j];
+					output[out++] = v;
+					deadEnd[deadEndSize++] = v;
+					candidates[nbCandidates++] = v;
+					liveTriangles[v]--;
+					if (time - cacheTime[v] > cacheSize) {
+						cacheTime[v] = time++;
+					}
+				}
+				emitted[t] = true;
+			}
+
+			// next fanning vertex: the one staying the longest in the cache
+			int best = -1, bestPriority = -1;
+			for (int c = 0; c < nbCandidates; ++c) {
+				int v = candidates[c];
+				if (liveTriangles[v] <= 0) continue;
+				int priority = 0;
+				if (time - cacheTime[v] + 2 * liveTriangles[v] <= cacheSize) {
+					priority = time - cacheTime[v];
+				}
+				if (priority > bestPriority) {
+					bestPriority = priority;
+					best = v;
+				}
+			}
+			if (best == -1) {
+				// dead end: most recent vertex with triangles left, else the next one in order
+				while (deadEndSize > 0 && best == -1) {
+					int v = deadEnd[--deadEndSize];
+					if (liveTriangles[v] > 0) best = v;
+				}
+				while (best == -1 && cursor < nbVertices) {
+					if (liveTriangles[cursor] > 0) best = cursor;
+					cursor++;
+				}
+			}
+			fanning = best;
+		}
+		return output;
+	}
+
+	/*
+	 * Renumbers the vertices in order of first use by the triangles, unused vertices are dropped
+	 */
+	static void reorderVertices(MeshData mesh) {
+		float[] vertices = mesh.getVertices();
+		float[] colors = mesh.getColors();
+		short[] indices = mesh.getIndices();
+		int nbVertices = vertices.length / 3;
+
+		int[] remap = new int[nbVertices];
+		Arrays.fill(remap, -1);
+		float[] newVertices = new float[vertices.length];
+		float[] newColors = colors != null ? new float[colors.length] : null;
+		int next = 0;
+		for (int i = 0; i < indices.length; ++i) {
+			int v = indices[i] & 0xFFFF;
+			if (remap[v] == -1) {
+				remap[v] = next;
+				System.arraycopy(vertices, 3 * v, newVertices, 3 * next, 3);
+				if (colors != null) System.arraycopy(colors, 4 * v, newColors, 4 * next, 4);
+				next++;
+			}
+			indices[i] = (short) remap[v];
+		}
+		mesh.setVertices(Arrays.copyOf(newVertices, 3 * next));
+		if (colors != null) mesh.setColors(Arrays.copyOf(newColors, 4 * next));
+	}
+
+	private static int hash(float[] vertices, float[] colors, int v) {
+		int h = 1;
+		for (int i = 0; i < 3; ++i) h = 31 * h + Float.floatToIntBits(vertices[3 * v + i]);
+		if (colors != null) {
+			for (int i = 0; i < 4; ++i) h = 31 * h + Float.floatToIntBits(colors[4 * v + i]);
+		}
+		// spreads the bits, the table size is a power of 2
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean sameVertex(float[] welded, float[] weldedColors, int w,
+									  float[] vertices, float[] colors, int v) {
+		for (int i = 0; i < 3; ++i) {
+			if (Float.floatToIntBits(welded[3 * w + i]) != Float.floatToIntBits(vertices[3 * v + i])) return false;
+		}
+		if (colors == null) return true;
+		for (int i = 0; i < 4; ++i) {
+			if (Float.floatToIntBits(weldedColors[4 * w + i]) != Float.floatToIntBits(colors[4 * v + i])) return false;
+		}
+		return true;
+	}
+
+	private static int[] toInts(short[] indices) {
+		int[] ints = new int[indices.length];
+		for (int i = 0; i < indices.length; ++i) ints[i] = indices[i] & 0xFFFF;
+		return ints;
+	}
+
+	private static short[] toShorts(int[] indices) {
+		short[] shorts = new short[indices.length];
+		for (int i = 0; i < indices.length; ++i) shorts[i] = (short) indices[i];
+		return shorts;
+	}
+}
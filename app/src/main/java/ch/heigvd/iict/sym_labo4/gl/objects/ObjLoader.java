@@ -1,15 +1,25 @@
 package ch.heigvd.iict.sym_labo4.gl.objects;
 
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.os.Process;
 import android.util.Log;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.microedition.khronos.opengles.GL10;
 
@@ -22,239 +32,239 @@ public class ObjLoader{
 
     private static final String TAG = ObjLoader.class.getSimpleName();
 
-	private List<Mesh> meshes = new LinkedList<>();
-    private List<Material> materials = new LinkedList<>();
+	// models are loaded one after the other, in the background
+	private static final ExecutorService loadingExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(() -> {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			r.run();
+		}, "ObjLoader");
+		t.setDaemon(true);
+		return t;
+	});
 
-	public ObjLoader(InputStream inModel) {
+	// all the meshes of the model, merged to be drawn with as few calls as possible.
+	// When the model needs several batches, they are merged into a single one with 32-bit
+	// indices on the first upload, if the GL context supports them
+	private List<MeshBatch> batches = new LinkedList<>();
+	private boolean layoutSelected = false;
 
-        List<String> vertices = new ArrayList<>();
-        List<String> faces = new ArrayList<>();
-		Material currentMaterial = null;
-		
-		List<PriorMesh> pMeshes = new LinkedList<>();
+	public ObjLoader(InputStream inModel) {
+		this(inModel, null);
+	}
 
+	/*
+	 * Same as ObjLoader(inModel), the material libraries of the model are read from librarySource
+	 */
+	ObjLoader(InputStream inModel, MaterialLibrary.Source librarySource) {
+		List<Mesh> meshes = new LinkedList<>();
 		try {
-			BufferedReader in = new BufferedReader(new InputStreamReader(inModel));
-
-			String line = in.readLine();
-
-			while(line != null){
-				if(line.startsWith("v ")){
-					vertices.add(line.substring(2));
-				}
-				else if(line.startsWith("f ")){
-					faces.add(line.substring(2));
-				}
-				else if(line.startsWith("g ")){
-					//next line contains the material to use
-					List<String> v = null, f = null;
-
-					if(vertices.size() > 0 && faces.size() > 0 && currentMaterial != null){
-						v = vertices;
-						f = faces;
-						pMeshes.add(createMesh(v, f, currentMaterial));
-						vertices = new ArrayList<>();
-						faces = new ArrayList<>();
-					}
-
-					line = in.readLine();
-                    currentMaterial = null;
-					String matName = line.split(" ")[1];
-					for(Material m: this.materials){
-						if(m.getName().equalsIgnoreCase(matName)){
-							currentMaterial = m;
-							break;
-						}
-					}
-					if(currentMaterial == null){
-						currentMaterial = getRandomMaterial();
-					}
-				}
-
-				line = in.readLine();
-			}
-			pMeshes.add(createMesh(vertices, faces, currentMaterial));
-
-			//re-center of the object
-			int nbr = 0, totX = 0, totY = 0, totZ = 0;
-			for(PriorMesh pm: pMeshes){
-				float[] coord = pm.getVertices();
-				for(int i = 0; i < coord.length; ++i){
-					if(i%3 == 0){
-						totX += coord[i];
-						nbr += 1;
-					}
-					else if(i%3 == 1){
-						totY += coord[i];
-					}
-					else if(i%3 == 2){
-						totZ += coord[i];
-					}
-				}
-			}
-			float mX = (float)((double)(totX) / (double)(nbr));
-			float mY = (float)((double)(totY) / (double)(nbr));
-			float mZ = (float)((double)(totZ) / (double)(nbr));
-
-			for(PriorMesh pm: pMeshes){
+			for(MeshData pm: ObjParser.parseParallel(inModel, librarySource)){
 				Mesh m = new Mesh();
-				pm.recenter(mX, mY, mZ);
 				m.setVertices(pm.getVertices());
 				m.setIndices(pm.getIndices());
-				m.setColors(pm.getColors());
+				if(pm.getColors() != null){
+					m.setColors(pm.getColors());
+				} else {
+					float[] c = pm.getColor();
+					m.setColor(c[0], c[1], c[2], c[3]);
+				}
 
 				meshes.add(m);
 			}
-
 		} catch (IOException e) {
             Log.w(TAG, "Exception while reading .obj file", e);
         }
+		setMeshes(meshes);
+	}
 
+	/*
+	 * Used when the meshes are already available, e.g. from a BinaryMesh
+	 */
+	ObjLoader(List<Mesh> meshes) {
+		setMeshes(meshes);
 	}
-	
-	private PriorMesh createMesh(List<String> vertices, List<String> faces, Material mat){
-		
-		PriorMesh tmpMesh = new PriorMesh();
-		
-		float[] vert = new float[3 * vertices.size()];
-		short[] ind  = new short[3 * faces.size()];
-		float[] colors = new float[4 * vertices.size()];
-		
-		for(int i = 0; i < vertices.size(); ++i){
-			String[] coord = vertices.get(i).split(" ");
-			vert[3*i + 0] = Float.parseFloat(coord[0]);
-			vert[3*i + 1] = Float.parseFloat(coord[1]);
-			vert[3*i + 2] = Float.parseFloat(coord[2]);
-		}
-		
-		for(int i = 0; i < faces.size(); ++i){
-			String[] coord = faces.get(i).split(" ");
-			for(int j = 0; j < 3; ++j){
-				String[] parts = coord[j].split("/");
-				ind[3*i + j] = (short)(Short.parseShort(parts[0]) - 1);
-			}
+
+	private void setMeshes(List<Mesh> meshes) {
+		this.batches = MeshBatch.build(meshes);
+	}
+
+	/*
+	 * Merges the batches if the GL context supports 32-bit indices, must be called before
+	 * uploading the batches. Only the 16-bit batches are built by the loading thread, so
+	 * that a large model is never held in both layouts until then
+	 */
+	private void selectBatches(boolean uintIndices) {
+		this.layoutSelected = true;
+		if(uintIndices && this.batches.size() > 1){
+			List<MeshBatch> merged = new LinkedList<>();
+			merged.add(MeshBatch.merge(this.batches));
+			this.batches = merged;
 		}
-		
-		//correction of the indices
-		short min = Short.MAX_VALUE;
-		for(int i = 0; i < ind.length; ++i){
-			if(ind[i] < min){
-				min = ind[i];
+	}
+
+	/**
+	 * Loads a model from the assets, using its precompiled BinaryMesh (model.symm) when
+	 * it is present, and parsing the .obj (and its .mtl libraries) otherwise.
+	 * The .symm is trusted: whether it is up to date with its sources is checked at build
+	 * time (see the checkMeshes gradle task), not on the device
+	 * @param objName name of the .obj asset, e.g. "arrow.obj"
+	 */
+	public static ObjLoader fromAssets(AssetManager assets, String objName) throws IOException {
+		String binName = objName.substring(0, objName.lastIndexOf('.')) + BinaryMesh.EXTENSION;
+
+		try {
+			BinaryMesh bin = BinaryMesh.read(mapAsset(assets, binName));
+			List<Mesh> meshes = new LinkedList<>();
+			for(int i = 0; i < bin.getMeshCount(); ++i){
+				Mesh m = new Mesh();
+				m.setVertices(bin.getVertices(i));
+				m.setIndices(bin.getIndices(i));
+				FloatBuffer colors = bin.getColors(i);
+				if(colors.capacity() == 4){
+					// flat color
+					m.setColor(colors.get(0), colors.get(1), colors.get(2), colors.get(3));
+				} else {
+					m.setColors(colors);
+				}
+				meshes.add(m);
 			}
+			return new ObjLoader(meshes);
+		} catch (FileNotFoundException e) {
+			Log.i(TAG, binName + " not found, parsing " + objName);
+		} catch (IOException e) {
+			Log.w(TAG, binName + " is invalid, parsing " + objName, e);
 		}
-		for(int i = 0; i < ind.length; ++i){
-			ind[i] -= min;
+
+		try (InputStream in = assets.open(objName)) {
+			// the libraries are next to the models
+			return new ObjLoader(in, assets::open);
 		}
+	}
+
+	/**
+	 * Same as fromAssets(), but the model is loaded on a background thread.
+	 * The meshes are fully built once the future is done, they can then be drawn from any thread
+	 * @return the future model, it fails with the IOException (or parsing error) of the loading
+	 */
+	public static Future<ObjLoader> loadAsync(AssetManager assets, String objName) {
+		return loadAsync(assets, objName, null);
+	}
 
-		float[] color = mat.getKd();
-		
-		for(int i = 0; i < colors.length; ++i){
-			if(i%4 == 3){
-				colors[i] = 1.0f;
+	/**
+	 * Same as loadAsync(assets, objName), onDone is then run on the loading thread
+	 * once the future is done, whether the loading succeeded or not
+	 */
+	public static Future<ObjLoader> loadAsync(AssetManager assets, String objName, Runnable onDone) {
+		FutureTask<ObjLoader> task = new FutureTask<ObjLoader>(() -> fromAssets(assets, objName)) {
+			@Override
+			protected void done() {
+				if(onDone != null) onDone.run();
 			}
-			else{
-				colors[i] = color[i%4];
+		};
+		loadingExecutor.execute(task);
+		return task;
+	}
+
+	/*
+	 * Memory-maps the asset when it is stored uncompressed (see noCompress in build.gradle),
+	 * copies it into a direct buffer otherwise
+	 */
+	private static ByteBuffer mapAsset(AssetManager assets, String name) throws IOException {
+		try (AssetFileDescriptor afd = assets.openFd(name);
+			 FileInputStream fis = afd.createInputStream()) {
+			return fis.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+		} catch (FileNotFoundException e) {
+			// compressed (or missing) asset
+		}
+		try (InputStream in = assets.open(name)) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int n;
+			while ((n = in.read(chunk)) != -1) {
+				bos.write(chunk, 0, n);
 			}
+			ByteBuffer bb = ByteBuffer.allocateDirect(bos.size()).order(ByteOrder.nativeOrder());
+			bb.put(bos.toByteArray());
+			bb.position(0);
+			return bb;
 		}
-		
-		tmpMesh.setColors(colors);
-		tmpMesh.setVertices(vert);
-		tmpMesh.setIndices(ind);
-		
-		return tmpMesh;
+	}
+
+	/**
+	 * @return the number of draw calls issued by draw() or drawGLES20()
+	 */
+	public int getDrawCallCount(){
+		return this.batches.size();
 	}
 
 	public void draw(GL10 gl){
-		for(Mesh m: this.meshes){
-			m.draw(gl);
+		MeshBatch.begin(gl);
+		for(MeshBatch b: this.batches){
+			b.draw(gl);
 		}
-	}
-	
-	private Material getRandomMaterial() {
-		Material m = new Material();
-		Random r = new Random();
-		
-		float[] tmp = new float[3]; tmp[0] = r.nextFloat(); tmp[1] = r.nextFloat(); tmp[2] = r.nextFloat();
-		m.setKa(tmp);
-		tmp = new float[3]; tmp[0] = r.nextFloat(); tmp[1] = r.nextFloat(); tmp[2] = r.nextFloat();
-		m.setKd(tmp);
-		tmp = new float[3]; tmp[0] = r.nextFloat(); tmp[1] = r.nextFloat(); tmp[2] = r.nextFloat();
-		m.setKs(tmp);
-		
-		m.setName("random auto-generated");
-		
-		return m;
+		MeshBatch.end(gl);
 	}
 
-    private static class Material{
-		
-		String name = null;
-		float[] kd = new float[3];
-		float[] ks = new float[3];
-		float[] ka = new float[3];
-		
-        String getName() {
-			return name;
-		}
-        void setName(String name) {
-			this.name = name;
-		}
-        float[] getKd() {
-			return kd;
-		}
-        void setKd(float[] kd) {
-			this.kd = kd;
-		}
-		public float[] getKs() {
-			return ks;
-		}
-        void setKs(float[] ks) {
-			this.ks = ks;
+	/**
+	 * Draws the model with the programmable pipeline (OpenGL ES 2.0), the program
+	 * must be in use and its MVP matrix set
+	 * @param positionAttrib location of the vec3/vec4 position attribute
+	 * @param colorAttrib location of the vec4 color attribute
+	 */
+	public void drawGLES20(int positionAttrib, int colorAttrib){
+		MeshBatch.beginGLES20(positionAttrib, colorAttrib);
+		for(MeshBatch b: this.batches){
+			b.drawGLES20(positionAttrib, colorAttrib);
 		}
-        float[] getKa() {
-			return ka;
-		}
-        void setKa(float[] ka) {
-			this.ka = ka;
-		}		
+		MeshBatch.endGLES20(positionAttrib, colorAttrib);
 	}
 
-	private static class PriorMesh{
-		float[] vertices = null;
-		short[] indices = null;
-		float[] colors = null;
-		
-        void recenter(float mX, float mY, float mZ){
-			for(int i = 0; i < this.vertices.length; ++i){
-				if(i%3 == 0){
-					this.vertices[i] -= mX;
-				}
-				else if(i%3 == 1){
-					this.vertices[i] -= mY;
-				}
-				else if(i%3 == 2){
-					this.vertices[i] -= mZ;
-				}
-			}
-		}
-		
-        float[] getVertices() {
-			return vertices;
+	/**
+	 * Uploads the batches into GPU buffer objects when supported (see MeshBatch.uploadBuffers).
+	 * On first call, a model of more than 65536 vertices is drawn from a single batch
+	 * if the context supports 32-bit indices
+	 */
+	public void uploadBuffers(GL10 gl){
+		if(!this.layoutSelected) selectBatches(MeshBatch.supportsUintIndices(gl));
+		for(MeshBatch b: this.batches){
+			b.uploadBuffers(gl);
 		}
-        void setVertices(float[] vertices) {
-			this.vertices = vertices;
-		}
-        short[] getIndices() {
-			return indices;
+	}
+
+	/**
+	 * Deletes the GPU buffer objects of the batches, must be called on the GL thread
+	 */
+	public void releaseBuffers(GL10 gl){
+		for(MeshBatch b: this.batches){
+			b.releaseBuffers(gl);
 		}
-        void setIndices(short[] indices) {
-			this.indices = indices;
+	}
+
+	/**
+	 * Same as uploadBuffers(), in an OpenGL ES 2.0 context
+	 */
+	public void uploadBuffersGLES20(){
+		if(!this.layoutSelected) selectBatches(MeshBatch.supportsUintIndicesGLES20());
+		for(MeshBatch b: this.batches){
+			b.uploadBuffersGLES20();
 		}
-        float[] getColors() {
-			return colors;
+	}
+
+	/**
+	 * Same as releaseBuffers(), in an OpenGL ES 2.0 context
+	 */
+	public void releaseBuffersGLES20(){
+		for(MeshBatch b: this.batches){
+			b.releaseBuffersGLES20();
 		}
-        void setColors(float[] colors) {
-			this.colors = colors;
+	}
+
+	/**
+	 * Forgets the GPU buffer objects after the loss of the EGL context
+	 */
+	public void discardBuffers(){
+		for(MeshBatch b: this.batches){
+			b.discardBuffers();
 		}
 	}
 
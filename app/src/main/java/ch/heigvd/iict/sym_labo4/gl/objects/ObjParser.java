@@ -0,0 +1,445 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Project: Labo4
+ * Turns an .obj stream into re-centered MeshData, one per "g" section (or several
+ * ones for a section of more than 65535 vertices, see MAX_CHUNK_VERTICES).
+ * Large models can be tokenized in parallel, by chunks of lines, see parseParallel().
+ * The materials come from the "mtllib" libraries (see MaterialLibrary), each group has the
+ * flat color of its material, a group without known material gets a color derived from its name.
+ * Pure Java, it can also be used outside of Android (see MeshConverter)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class ObjParser {
+
+	// largest number of vertices of a mesh, so that its indices fit in unsigned shorts
+	static final int MAX_CHUNK_VERTICES = 0xFFFF;
+
+	// below, a model is not worth splitting into chunks
+	private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+	private final MaterialLibrary.Source librarySource;
+	// materials of the libraries of the model
+	private final Map<String, Material> materials = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+	// created on first parallel parsing (ForkJoinPool.commonPool() needs API 24)
+	private static final class Workers {
+		static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	private ObjParser(MaterialLibrary.Source librarySource) {
+		this.librarySource = librarySource;
+	}
+
+	/**
+	 * Parses the whole model without its material libraries, the stream is not closed
+	 */
+	static List<MeshData> parse(InputStream inModel) throws IOException {
+		return parse(inModel, null);
+	}
+
+	/**
+	 * Parses the whole model, the stream is not closed
+	 * @param librarySource where its material libraries are, null to ignore them
+	 */
+	static List<MeshData> parse(InputStream inModel, MaterialLibrary.Source librarySource) throws IOException {
+		return new ObjParser(librarySource).read(inModel);
+	}
+
+	/**
+	 * Same as parse(), the content is read first and tokenized on all the cores
+	 */
+	static List<MeshData> parseParallel(InputStream inModel, MaterialLibrary.Source librarySource) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(inModel.available(), 8192));
+		byte[] chunk = new byte[8192];
+		int n;
+		while ((n = inModel.read(chunk)) != -1) {
+			bos.write(chunk, 0, n);
+		}
+		return parseParallel(bos.toByteArray(), librarySource);
+	}
+
+	/**
+	 * Same as parse(), the content is split into chunks of lines tokenized in parallel,
+	 * whose results are then merged in order. The meshes are the same as with parse()
+	 */
+	static List<MeshData> parseParallel(byte[] content, MaterialLibrary.Source librarySource) throws IOException {
+		int nbChunks = Math.min(2 * Workers.POOL.getParallelism(), content.length / MIN_CHUNK_SIZE);
+		if (nbChunks < 2) {
+			return parse(new ByteArrayInputStream(content), librarySource);
+		}
+		return new ObjParser(librarySource).readParallel(content, nbChunks);
+	}
+
+	/**
+	 * @return the names of the material libraries referenced by the model, in order, without duplicates
+	 */
+	static List<String> materialLibraries(byte[] content) throws IOException {
+		final List<String> names = new ArrayList<>();
+		new ObjTokenizer(new ByteArrayInputStream(content)).parse(new ObjTokenizer.Listener() {
+			@Override
+			public void onVertex(float x, float y, float z) { }
+
+			@Override
+			public void onFace(int a, int b, int c) { }
+
+			@Override
+			public void onGroup(String materialName) { }
+
+			@Override
+			public void onMaterialLibrary(String fileName) {
+				if(fileName != null && !names.contains(fileName)) names.add(fileName);
+			}
+
+			@Override
+			public void onMaterial(String materialName) { }
+		});
+		return names;
+	}
+
+	private List<MeshData> read(InputStream inModel) throws IOException {
+		List<MeshData> pMeshes = new LinkedList<>();
+
+		GroupCollector collector = new GroupCollector(pMeshes);
+		new ObjTokenizer(inModel).parse(collector);
+		collector.finish();
+
+		recenter(pMeshes);
+		return pMeshes;
+	}
+
+	private List<MeshData> readParallel(byte[] content, int nbChunks) throws IOException {
+		List<Callable<ChunkRecorder>> tasks = new ArrayList<>(nbChunks);
+		int start = 0;
+		for(int i = 1; i <= nbChunks && start < content.length; ++i){
+			int end = i == nbChunks ? content.length : chunkBoundary(content, (int) ((long) content.length * i / nbChunks));
+			if(end <= start) continue;
+			final int from = start, length = end - start;
+			tasks.add(() -> {
+				ChunkRecorder recorder = new ChunkRecorder();
+				new ObjTokenizer(new ByteArrayInputStream(content, from, length)).parse(recorder);
+				return recorder;
+			});
+			start = end;
+		}
+
+		List<MeshData> pMeshes = new LinkedList<>();
+		GroupCollector collector = new GroupCollector(pMeshes);
+		try {
+			for(Future<ChunkRecorder> f: Workers.POOL.invokeAll(tasks)){
+				f.get().replay(collector);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Parsing interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) throw (IOException) cause;
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+		collector.finish();
+
+		recenter(pMeshes);
+		return pMeshes;
+	}
+
+	/*
+	 * First line start at or after position, which is not the material line of a "g" line
+	 * (the tokenizer reads them together)
+	 */
+	private static int chunkBoundary(byte[] content, int position) {
+		int p = position;
+		while(p < content.length && (p == 0 || content[p - 1] != '\n')) ++p;
+		if(p >= content.length) return content.length;
+		// start of the previous line
+		int previous = p - 1;
+		while(previous > 0 && content[previous - 1] != '\n') --previous;
+		if(content[previous] == 'g' && previous + 1 < p && content[previous + 1] == ' '){
+			// skip the material line
+			do { ++p; } while(p < content.length && content[p - 1] != '\n');
+		}
+		return p;
+	}
+
+	private void recenter(List<MeshData> pMeshes) {
+		//re-center of the object
+		int nbr = 0, totX = 0, totY = 0, totZ = 0;
+		for(MeshData pm: pMeshes){
+			float[] coord = pm.getVertices();
+			for(int i = 0; i < coord.length; ++i){
+				if(i%3 == 0){
+					totX += coord[i];
+					nbr += 1;
+				}
+				else if(i%3 == 1){
+					totY += coord[i];
+				}
+				else if(i%3 == 2){
+					totZ += coord[i];
+				}
+			}
+		}
+		float mX = (float)((double)(totX) / (double)(nbr));
+		float mY = (float)((double)(totY) / (double)(nbr));
+		float mZ = (float)((double)(totZ) / (double)(nbr));
+
+		for(MeshData pm: pMeshes){
+			pm.recenter(mX, mY, mZ);
+		}
+	}
+
+	/*
+	 * Turns a "g" section into one MeshData, or into several ones when it has too many
+	 * vertices to be indexed with (unsigned) shorts
+	 * @throws IOException if a face refers to a vertex outside of the section
+	 */
+	private void addMeshes(List<MeshData> pMeshes, FloatArray vertices, IntArray faces, Material mat) throws IOException {
+		int nbVertices = vertices.size() / 3;
+		//correction of the indices: the faces use the global (1-based) indices of the file
+		int min = firstVertex(faces, nbVertices);
+		if(nbVertices > MAX_CHUNK_VERTICES){
+			splitMesh(pMeshes, vertices, faces, min, mat);
+			return;
+		}
+
+		MeshData tmpMesh = new MeshData();
+
+		float[] vert = vertices.toArray();
+		short[] ind  = new short[faces.size()];
+
+		for(int i = 0; i < ind.length; ++i){
+			// read back as unsigned
+			ind[i] = (short)(faces.get(i) - min);
+		}
+
+		tmpMesh.setColor(mat.getColor());
+		tmpMesh.setVertices(vert);
+		tmpMesh.setIndices(ind);
+		
+		pMeshes.add(tmpMesh);
+	}
+
+	/*
+	 * Lowest vertex index of the faces of a section, the faces are checked to only refer to
+	 * its nbVertices vertices
+	 * @throws IOException if a face refers to a vertex outside of the section
+	 */
+	private static int firstVertex(IntArray faces, int nbVertices) throws IOException {
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		for(int i = 0; i < faces.size(); ++i){
+			min = Math.min(min, faces.get(i));
+			max = Math.max(max, faces.get(i));
+		}
+		if(faces.size() > 0 && (long) max - min >= nbVertices){
+			throw new IOException("Faces referring to vertices " + min + " to " + max
+					+ ", outside of their group of " + nbVertices + " vertices");
+		}
+		return min;
+	}
+
+	/*
+	 * Splits a section into chunks of at most MAX_CHUNK_VERTICES vertices, in the order of its
+	 * triangles. The vertices shared by two chunks are duplicated
+	 * @param min index of the first vertex of the section in the faces, see firstVertex()
+	 */
+	private void splitMesh(List<MeshData> pMeshes, FloatArray vertices, IntArray faces, int min, Material mat) {
+		int nbVertices = vertices.size() / 3;
+		// chunk in which each vertex of the section was last added, and its index in it
+		int[] chunkOf = new int[nbVertices];
+		int[] remap = new int[nbVertices];
+		int chunk = 1;
+		FloatArray chunkVertices = new FloatArray(3 * MAX_CHUNK_VERTICES);
+		IntArray chunkFaces = new IntArray(3 * MAX_CHUNK_VERTICES);
+
+		for(int t = 0; t < faces.size(); t += 3){
+			int a = faces.get(t) - min, b = faces.get(t + 1) - min, c = faces.get(t + 2) - min;
+			int added = (chunkOf[a] != chunk ? 1 : 0)
+					+ (b != a && chunkOf[b] != chunk ? 1 : 0)
+					+ (c != a && c != b && chunkOf[c] != chunk ? 1 : 0);
+			if(chunkVertices.size() / 3 + added > MAX_CHUNK_VERTICES){
+				pMeshes.add(createChunk(chunkVertices, chunkFaces, mat));
+				chunkVertices.clear();
+				chunkFaces.clear();
+				chunk++;
+			}
+			chunkFaces.add(addToChunk(a, chunk, chunkOf, remap, vertices, chunkVertices),
+					addToChunk(b, chunk, chunkOf, remap, vertices, chunkVertices),
+					addToChunk(c, chunk, chunkOf, remap, vertices, chunkVertices));
+		}
+		if(chunkFaces.size() > 0){
+			pMeshes.add(createChunk(chunkVertices, chunkFaces, mat));
+		}
+	}
+
+	private static int addToChunk(int v, int chunk, int[] chunkOf, int[] remap,
+								  FloatArray vertices, FloatArray chunkVertices){
+		if(chunkOf[v] != chunk){
+			chunkOf[v] = chunk;
+			remap[v] = chunkVertices.size() / 3;
+			chunkVertices.add(vertices.get(3 * v), vertices.get(3 * v + 1), vertices.get(3 * v + 2));
+		}
+		return remap[v];
+	}
+
+	private MeshData createChunk(FloatArray vertices, IntArray faces, Material mat){
+		MeshData tmpMesh = new MeshData();
+		short[] ind = new short[faces.size()];
+		for(int i = 0; i < ind.length; ++i){
+			ind[i] = (short) faces.get(i);
+		}
+		tmpMesh.setColor(mat.getColor());
+		tmpMesh.setVertices(vertices.toArray());
+		tmpMesh.setIndices(ind);
+		return tmpMesh;
+	}
+
+	private Material findMaterial(String name) {
+		Material m = name != null ? materials.get(name) : null;
+		return m != null ? m : Material.fallback(name);
+	}
+
+	/*
+	 * Accumulates the tokens of the current "g" section and turns each
+	 * completed section into a MeshData
+	 */
+	private class GroupCollector implements ObjTokenizer.Listener {
+
+		private final List<MeshData> pMeshes;
+		private final FloatArray vertices = new FloatArray(1024);
+		private final IntArray faces = new IntArray(1024);
+		private Material currentMaterial = null;
+
+		GroupCollector(List<MeshData> pMeshes) {
+			this.pMeshes = pMeshes;
+		}
+
+		@Override
+		public void onVertex(float x, float y, float z) {
+			vertices.add(x, y, z);
+		}
+
+		@Override
+		public void onFace(int a, int b, int c) {
+			faces.add(a, b, c);
+		}
+
+		@Override
+		public void onGroup(String matName) throws IOException {
+			if(vertices.size() > 0 && faces.size() > 0 && currentMaterial != null){
+				addMeshes(pMeshes, vertices, faces, currentMaterial);
+				vertices.clear();
+				faces.clear();
+			}
+
+			currentMaterial = findMaterial(matName);
+		}
+
+		@Override
+		public void onMaterialLibrary(String fileName) throws IOException {
+			if(librarySource != null && fileName != null){
+				materials.putAll(MaterialLibrary.load(librarySource, fileName));
+			}
+		}
+
+		/*
+		 * Only sets the material of a group that has no faces yet,
+		 * a group is not split by material
+		 */
+		@Override
+		public void onMaterial(String materialName) {
+			if(faces.size() == 0){
+				currentMaterial = findMaterial(materialName);
+			}
+		}
+
+		/*
+		 * Same as onVertex()/onFace() for the given ranges of a chunk
+		 */
+		void addAll(FloatArray chunkVertices, int vFrom, int vTo, IntArray chunkFaces, int fFrom, int fTo) {
+			vertices.addAll(chunkVertices, vFrom, vTo);
+			faces.addAll(chunkFaces, fFrom, fTo);
+		}
+
+		void finish() throws IOException {
+			addMeshes(pMeshes, vertices, faces, currentMaterial != null ? currentMaterial : findMaterial(null));
+		}
+	}
+
+	/*
+	 * Records the content of a chunk, to be replayed in order into the GroupCollector
+	 */
+	private static final class ChunkRecorder implements ObjTokenizer.Listener {
+
+		private static final int GROUP = 0, MATERIAL_LIBRARY = 1, MATERIAL = 2;
+
+		private final FloatArray vertices = new FloatArray(3 * 1024);
+		private final IntArray faces = new IntArray(3 * 1024);
+		// for each other line, its kind, the sizes of vertices and faces when it was met and its name
+		private final IntArray eventKinds = new IntArray();
+		private final IntArray eventVertices = new IntArray();
+		private final IntArray eventFaces = new IntArray();
+		private final List<String> eventNames = new ArrayList<>();
+
+		@Override
+		public void onVertex(float x, float y, float z) {
+			vertices.add(x, y, z);
+		}
+
+		@Override
+		public void onFace(int a, int b, int c) {
+			faces.add(a, b, c);
+		}
+
+		@Override
+		public void onGroup(String materialName) {
+			addEvent(GROUP, materialName);
+		}
+
+		@Override
+		public void onMaterialLibrary(String fileName) {
+			addEvent(MATERIAL_LIBRARY, fileName);
+		}
+
+		@Override
+		public void onMaterial(String materialName) {
+			addEvent(MATERIAL, materialName);
+		}
+
+		private void addEvent(int kind, String name) {
+			eventKinds.add(kind);
+			eventVertices.add(vertices.size());
+			eventFaces.add(faces.size());
+			eventNames.add(name);
+		}
+
+		void replay(GroupCollector collector) throws IOException {
+			int v = 0, f = 0;
+			for(int e = 0; e < eventKinds.size(); ++e){
+				collector.addAll(vertices, v, eventVertices.get(e), faces, f, eventFaces.get(e));
+				v = eventVertices.get(e);
+				f = eventFaces.get(e);
+				switch(eventKinds.get(e)){
+					case GROUP: collector.onGroup(eventNames.get(e)); break;
+					case MATERIAL_LIBRARY: collector.onMaterialLibrary(eventNames.get(e)); break;
+					default: collector.onMaterial(eventNames.get(e)); break;
+				}
+			}
+			collector.addAll(vertices, v, vertices.size(), faces, f, faces.size());
+		}
+	}
+}
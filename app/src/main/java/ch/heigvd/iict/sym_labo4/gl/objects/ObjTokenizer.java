@@ -0,0 +1,278 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Project: Labo4
+ * Single-pass tokenizer for the subset of the .obj format used by ObjLoader.
+ * Bytes are read directly from the stream, numbers are decoded without creating
+ * intermediate Strings (only the material names of the groups are allocated)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class ObjTokenizer {
+
+	/**
+	 * Receives the content of the model while it is tokenized
+	 */
+	interface Listener {
+		// "v x y z" line
+		void onVertex(float x, float y, float z);
+		// "f a b c" line, raw (1-based) vertex indices of the first triangle
+		void onFace(int a, int b, int c);
+		// "g ..." line, followed by the material line (may be null)
+		void onGroup(String materialName) throws IOException;
+		// "mtllib <file>" line (only the first file is kept)
+		void onMaterialLibrary(String fileName) throws IOException;
+		// "usemtl <name>" line, other than the one following a "g" line
+		void onMaterial(String materialName);
+	}
+
+	private static final int EOF = -1;
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	// a float can be computed exactly in single precision if its mantissa
+	// and its power of ten are both exactly representable as floats
+	private static final long MAX_EXACT_MANTISSA = 1L << 24;
+	private static final float[] POW10 = {
+			1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+
+	// current token, kept for error messages and for the slow path
+	private char[] token = new char[32];
+	private int tokenLength = 0;
+
+	ObjTokenizer(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Tokenizes the whole stream, the stream is not closed
+	 */
+	void parse(Listener listener) throws IOException {
+		int c;
+		while ((c = read()) != EOF) {
+			if (c == '\n') continue;
+			int c2 = read();
+			if (c2 == ' ') {
+				if (c == 'v') {
+					float x = nextFloat();
+					float y = nextFloat();
+					float z = nextFloat();
+					listener.onVertex(x, y, z);
+					skipLine();
+					continue;
+				} else if (c == 'f') {
+					int a = nextIndex();
+					int b = nextIndex();
+					int i = nextIndex();
+					listener.onFace(a, b, i);
+					skipLine();
+					continue;
+				} else if (c == 'g') {
+					skipLine();
+					//next line contains the material to use
+					listener.onGroup(readMaterialLine());
+					continue;
+				}
+			} else if (c == 'm' && c2 == 't' && nextToken() > 0 && tokenEquals("llib")) {
+				listener.onMaterialLibrary(nextWord());
+				skipLine();
+				continue;
+			} else if (c == 'u' && c2 == 's' && nextToken() > 0 && tokenEquals("emtl")) {
+				listener.onMaterial(nextWord());
+				skipLine();
+				continue;
+			}
+			if (c2 != '\n' && c2 != EOF) skipLine();
+		}
+	}
+
+	/*
+	 * Returns the second word of the next line (e.g. "usemtl <name>"),
+	 * null if there is no such line or word
+	 */
+	private String readMaterialLine() throws IOException {
+		if (peek() == EOF) return null;
+		String name = null;
+		if (nextToken() > 0 && nextToken() > 0) {
+			name = new String(token, 0, tokenLength);
+		}
+		skipLine();
+		return name;
+	}
+
+	/*
+	 * Returns the next word of the current line, null at the end of the line
+	 */
+	private String nextWord() throws IOException {
+		return nextToken() > 0 ? new String(token, 0, tokenLength) : null;
+	}
+
+	private boolean tokenEquals(String word) {
+		if (tokenLength != word.length()) return false;
+		for (int i = 0; i < tokenLength; ++i) {
+			if (token[i] != word.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private float nextFloat() throws IOException {
+		if (nextToken() == 0) {
+			throw new NumberFormatException("Missing coordinate");
+		}
+		char[] t = token;
+		int len = tokenLength;
+		int i = 0;
+		boolean negative = false;
+		if (t[0] == '-' || t[0] == '+') {
+			negative = t[0] == '-';
+			++i;
+		}
+
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean seenDot = false, seenDigit = false, valid = true;
+		for (; i < len; ++i) {
+			char ch = t[i];
+			if (ch >= '0' && ch <= '9') {
+				seenDigit = true;
+				if (digits == 18) {
+					valid = false;
+					break;
+				}
+				mantissa = mantissa * 10 + (ch - '0');
+				if (mantissa != 0) ++digits;
+				if (seenDot) --exponent;
+			} else if (ch == '.' && !seenDot) {
+				seenDot = true;
+			} else {
+				break;
+			}
+		}
+		valid &= seenDigit;
+		if (valid && i < len) {
+			// explicit exponent
+			valid = (t[i] == 'e' || t[i] == 'E') && ++i < len;
+			if (valid) {
+				boolean negativeExp = false;
+				if (t[i] == '-' || t[i] == '+') {
+					negativeExp = t[i] == '-';
+					++i;
+				}
+				int exp = 0;
+				valid = i < len;
+				for (; valid && i < len; ++i) {
+					char ch = t[i];
+					if (ch < '0' || ch > '9' || exp > 1000) valid = false;
+					else exp = exp * 10 + (ch - '0');
+				}
+				exponent += negativeExp ? -exp : exp;
+			}
+		}
+		if (valid) {
+			while (mantissa != 0 && mantissa % 10 == 0) {
+				mantissa /= 10;
+				++exponent;
+			}
+			if (mantissa == 0) {
+				return negative ? -0.0f : 0.0f;
+			}
+			if (mantissa <= MAX_EXACT_MANTISSA && exponent >= -10 && exponent <= 10) {
+				float value = exponent >= 0 ?
+						(float) mantissa * POW10[exponent] :
+						(float) mantissa / POW10[-exponent];
+				return negative ? -value : value;
+			}
+		}
+
+		// rare cases (long mantissa, large exponent, NaN, ...) are delegated to the JDK
+		return Float.parseFloat(new String(t, 0, len));
+	}
+
+	/*
+	 * Reads a face element ("v", "v/vt", "v//vn" or "v/vt/vn") and returns its vertex index
+	 */
+	private int nextIndex() throws IOException {
+		if (nextToken() == 0) {
+			throw new NumberFormatException("Missing face index");
+		}
+		char[] t = token;
+		int i = 0;
+		boolean negative = false;
+		if (t[0] == '-' || t[0] == '+') {
+			negative = t[0] == '-';
+			++i;
+		}
+		int value = 0;
+		int start = i;
+		for (; i < tokenLength && t[i] != '/'; ++i) {
+			char ch = t[i];
+			if (ch < '0' || ch > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+				throw new NumberFormatException("Invalid face index: " + new String(t, 0, tokenLength));
+			}
+			value = value * 10 + (ch - '0');
+		}
+		if (i == start) {
+			throw new NumberFormatException("Invalid face index: " + new String(t, 0, tokenLength));
+		}
+		return negative ? -value : value;
+	}
+
+	/*
+	 * Copies the next whitespace-separated word of the current line into token,
+	 * returns its length (0 at the end of the line)
+	 */
+	private int nextToken() throws IOException {
+		int c = peek();
+		while (c == ' ' || c == '\t' || c == '\r') {
+			++position;
+			c = peek();
+		}
+		int len = 0;
+		while (c != EOF && c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+			if (len == token.length) {
+				char[] tmp = new char[token.length << 1];
+				System.arraycopy(token, 0, tmp, 0, len);
+				token = tmp;
+			}
+			token[len++] = (char) c;
+			++position;
+			c = peek();
+		}
+		tokenLength = len;
+		return len;
+	}
+
+	private void skipLine() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c != '\n' && c != EOF);
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill()) return EOF;
+		return buffer[position++] & 0xFF;
+	}
+
+	private int peek() throws IOException {
+		if (position == limit && !fill()) return EOF;
+		return buffer[position] & 0xFF;
+	}
+
+	private boolean fill() throws IOException {
+		int n;
+		do {
+			n = in.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		if (n < 0) return false;
+		position = 0;
+		limit = n;
+		return true;
+	}
+}
@@ -0,0 +1,104 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+/**
+ * Project: Labo4
+ * Chooses the sampling rate of the orientation sensors from the rotation speed of the device:
+ * a high rate while it is rotating, and a low rate with hardware batching (FIFO) once it has
+ * been still for a while, so that the application is woken up less often.
+ * The motion can only be seen once the FIFO delivers its events, so batching delays the switch
+ * back to the high rate: at worst IDLE_PERIOD_US (the first moving sample) plus
+ * IDLE_MAX_REPORT_LATENCY_US (its stay in the FIFO), i.e. 100 ms or 5 active periods.
+ * It is fed with the successive rotation matrices (4x4), nothing is allocated
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class AdaptiveSamplingController {
+
+    public static final int ACTIVE_PERIOD_US = 20000;
+    public static final int IDLE_PERIOD_US = 2 * ACTIVE_PERIOD_US;
+    // a few active periods, longer would show as a lag when the device starts moving again
+    public static final int IDLE_MAX_REPORT_LATENCY_US = 3 * ACTIVE_PERIOD_US;
+
+    private static final float DEFAULT_MOTION_THRESHOLD = (float) Math.toRadians(15);
+    private static final long DEFAULT_IDLE_DELAY_NS = 2000000000L;
+
+    // rotation speed (rad/s) above which the device is considered as rotating
+    private final float motionThreshold;
+    // time the device must be still before going back to the low rate
+    private final long idleDelay;
+
+    private final float[] lastMatrix = new float[16];
+    private long lastTimestamp = 0;
+    private long lastMotion = 0;
+    private boolean active = true;
+
+    public AdaptiveSamplingController() {
+        this(DEFAULT_MOTION_THRESHOLD, DEFAULT_IDLE_DELAY_NS);
+    }
+
+    /**
+     * @param motionThreshold rotation speed considered as a motion, in rad/s
+     * @param idleDelayNanos duration without motion before switching to the low rate
+     */
+    public AdaptiveSamplingController(float motionThreshold, long idleDelayNanos) {
+        this.motionThreshold = motionThreshold;
+        this.idleDelay = idleDelayNanos;
+    }
+
+    /**
+     * Updates the rotation speed with a new orientation
+     * @param timestamp of the orientation, in nanoseconds
+     * @return true if the sampling rate must be changed
+     */
+    public boolean update(float[] rotationMatrix, long timestamp) {
+        boolean wasActive = active;
+        if(lastTimestamp != 0 && timestamp > lastTimestamp) {
+            // trace(A^T * B) = 1 + 2 * cos(angle between A and B), see RotationChangeDetector
+            float trace = 0f;
+            for(int row = 0; row < 3; ++row) {
+                for(int col = 0; col < 3; ++col) {
+                    trace += lastMatrix[4 * row + col] * rotationMatrix[4 * row + col];
+                }
+            }
+            float cosAngle = Math.max(-1f, Math.min(1f, (trace - 1f) * 0.5f));
+            float speed = (float) Math.acos(cosAngle) / ((timestamp - lastTimestamp) * 1e-9f);
+            if(speed > motionThreshold) {
+                lastMotion = timestamp;
+                active = true;
+            } else if(timestamp - lastMotion > idleDelay) {
+                active = false;
+            }
+        } else {
+            lastMotion = timestamp;
+        }
+        System.arraycopy(rotationMatrix, 0, lastMatrix, 0, 16);
+        lastTimestamp = timestamp;
+        return active != wasActive;
+    }
+
+    /**
+     * @return whether the device is rotating (high rate) or still (low rate and batching)
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    public int getSamplingPeriodUs() {
+        return active ? ACTIVE_PERIOD_US : IDLE_PERIOD_US;
+    }
+
+    /**
+     * @return the delay the events may be kept in the hardware FIFO, 0 for no batching
+     */
+    public int getMaxReportLatencyUs() {
+        return active ? 0 : IDLE_MAX_REPORT_LATENCY_US;
+    }
+
+    /**
+     * Starts again at the high rate, e.g. when the sensors are registered again
+     */
+    public void reset() {
+        active = true;
+        lastTimestamp = 0;
+    }
+
+}
@@ -0,0 +1,68 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+/**
+ * Project: Labo4
+ * Complementary filter on a 4x4 rotation matrix: the orientation is integrated from the
+ * gyroscope, which is smooth and responsive but drifts, and pulled towards the absolute
+ * orientation (accelerometer and magnetometer, or rotation vector), which is noisy but does
+ * not drift. The cutoff is the frequency below which the absolute orientation is trusted.
+ * The correction is the one of SlerpFilter, whose state is integrated from the gyroscope
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class ComplementaryFilter extends SlerpFilter {
+
+    private static final float NANOS_TO_SECONDS = 1e-9f;
+
+    private final float[] delta = new float[4];
+    private long lastGyroscopeTimestamp = 0;
+
+    /**
+     * @param cutoffHz crossover frequency between the gyroscope and the absolute orientation, in Hertz
+     */
+    public ComplementaryFilter(float cutoffHz) {
+        super(cutoffHz);
+    }
+
+    /**
+     * Integrates a gyroscope sample into the estimated orientation
+     * @param rate angular speed around the x, y and z axes of the device, in rad/s
+     * @return true if the estimated orientation has been updated (see getRotationMatrix())
+     */
+    public boolean onGyroscope(float[] rate, long timestamp) {
+        float dt = (timestamp - lastGyroscopeTimestamp) * NANOS_TO_SECONDS;
+        boolean first = lastGyroscopeTimestamp == 0;
+        lastGyroscopeTimestamp = timestamp;
+        if(!hasState() || first || dt <= 0f) {
+            return false;
+        }
+        float wx = rate[0], wy = rate[1], wz = rate[2];
+        float speed = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+        if(speed == 0f) {
+            return false;
+        }
+        // rotation of the device during dt, in its own frame: applied on the right
+        float halfAngle = speed * dt * 0.5f;
+        float s = (float) Math.sin(halfAngle) / speed;
+        delta[0] = wx * s;
+        delta[1] = wy * s;
+        delta[2] = wz * s;
+        delta[3] = (float) Math.cos(halfAngle);
+        Quaternions.multiply(state, delta, state);
+        Quaternions.normalize(state);
+        return true;
+    }
+
+    /**
+     * Writes the estimated orientation
+     */
+    public void getRotationMatrix(float[] rotationMatrix) {
+        Quaternions.toMatrix(state, rotationMatrix);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        lastGyroscopeTimestamp = 0;
+    }
+
+}
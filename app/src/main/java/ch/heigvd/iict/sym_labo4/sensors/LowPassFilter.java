@@ -0,0 +1,52 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+/**
+ * Project: Labo4
+ * Exponential (first order) low-pass filter, applied to each component of the values.
+ * The smoothing factor follows the actual interval between the samples, so that the
+ * cutoff frequency does not depend on the sampling rate
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class LowPassFilter implements SensorFilter {
+
+    private static final int MAX_VALUES = 16;
+
+    private final float[] state = new float[MAX_VALUES];
+    private float timeConstant;
+    private long lastTimestamp = 0;
+    private boolean hasState = false;
+
+    /**
+     * @param cutoffHz cutoff frequency, in Hertz
+     */
+    public LowPassFilter(float cutoffHz) {
+        setCutoff(cutoffHz);
+    }
+
+    public void setCutoff(float cutoffHz) {
+        this.timeConstant = (float) (1.0 / (2.0 * Math.PI * cutoffHz));
+    }
+
+    @Override
+    public void filter(float[] values, long timestamp) {
+        int n = Math.min(values.length, MAX_VALUES);
+        float dt = (timestamp - lastTimestamp) * 1e-9f;
+        lastTimestamp = timestamp;
+        if(!hasState || dt <= 0f) {
+            System.arraycopy(values, 0, state, 0, n);
+            hasState = true;
+            return;
+        }
+        float alpha = dt / (timeConstant + dt);
+        for(int i = 0; i < n; ++i) {
+            state[i] += alpha * (values[i] - state[i]);
+            values[i] = state[i];
+        }
+    }
+
+    @Override
+    public void reset() {
+        hasState = false;
+    }
+
+}
@@ -0,0 +1,349 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * Project: Labo4
+ * Computes the orientation of the device as a 4x4 rotation matrix, from the best sensors
+ * available: the rotation vector (fused by the platform), else the geomagnetic rotation
+ * vector, else the accelerometer and the magnetometer. The events are copied into
+ * preallocated buffers, nothing is allocated per event.
+ * Optional filters smooth the inputs (accelerometer and magnetometer) and the resulting
+ * orientation, a ComplementaryFilter on the orientation also uses the gyroscope.
+ * Without a SensorManager, the events can also be fed by onSensorData(), which does not
+ * use the Android framework, e.g. to replay recorded events on a plain JVM
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class OrientationFusion {
+
+    private static final String TAG = OrientationFusion.class.getSimpleName();
+
+    public enum Source { ROTATION_VECTOR, GEOMAGNETIC_ROTATION_VECTOR, ACCELEROMETER_MAGNETOMETER, NONE }
+
+    // filters, see setFilter()
+    public static final String FILTER_NONE = "none";
+    public static final String FILTER_LOW_PASS = "low_pass";
+    public static final String FILTER_COMPLEMENTARY = "complementary";
+    public static final String FILTER_SLERP = "slerp";
+
+    // below this norm, the device is considered in free fall (same as SensorManager.getRotationMatrix())
+    private static final float FREE_FALL_GRAVITY_SQUARED = 0.01f * 9.81f * 9.81f;
+    // below this norm, the magnetic field is too close to the gravity to be used
+    private static final float MIN_HORIZONTAL_FIELD = 0.1f;
+
+    private final SensorManager sensorManager;
+    private final Source source;
+    // rotation vector sensor, or accelerometer and magnetometer
+    private final Sensor rotationVector;
+    private final Sensor accelerometer;
+    private final Sensor magneticField;
+    private final Sensor gyroscope;
+    private final boolean hasGyroscope;
+    // thread the events are delivered to, null for the main thread
+    private Handler handler = null;
+
+    // filters, null for none
+    private SensorFilter gravityFilter = null;
+    private SensorFilter geomagneticFilter = null;
+    private SensorFilter orientationFilter = null;
+    // the orientation filter, if it integrates the gyroscope
+    private ComplementaryFilter gyroscopeFilter = null;
+
+    // copies of the last events, the arrays of the events belong to the framework
+    // (only the x, y, z, w components of the rotation vector, some devices reject more)
+    private final float[] rotationVectorValues = new float[4];
+    private final float[] gravity = new float[3];
+    private final float[] geomagnetic = new float[3];
+    // whether a value has been received since the last computation
+    private boolean gravityFresh = false;
+    private boolean geomagneticFresh = false;
+
+    private final float[] rotationMatrix = new float[16];
+    private long timestamp = 0;
+
+    public OrientationFusion(SensorManager sensorManager) {
+        this.sensorManager = sensorManager;
+        Sensor rotation = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        Source source = Source.ROTATION_VECTOR;
+        if(rotation == null) {
+            rotation = sensorManager.getDefaultSensor(Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR);
+            source = Source.GEOMAGNETIC_ROTATION_VECTOR;
+        }
+        if(rotation != null) {
+            this.rotationVector = rotation;
+            this.accelerometer = null;
+            this.magneticField = null;
+        } else {
+            this.rotationVector = null;
+            this.accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            this.magneticField = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+            source = this.accelerometer != null && this.magneticField != null
+                    ? Source.ACCELEROMETER_MAGNETOMETER : Source.NONE;
+        }
+        this.source = source;
+        this.gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        this.hasGyroscope = this.gyroscope != null;
+        Log.d(TAG, "Orientation computed from " + source);
+    }
+
+    /**
+     * Fusion without sensors, fed by onSensorData() only
+     * @param source the sensors the events will come from
+     * @param hasGyroscope whether gyroscope events will be given too
+     */
+    public OrientationFusion(Source source, boolean hasGyroscope) {
+        this.sensorManager = null;
+        this.source = source;
+        this.rotationVector = this.accelerometer = this.magneticField = this.gyroscope = null;
+        this.hasGyroscope = hasGyroscope;
+    }
+
+    /**
+     * @return the sensors the orientation is computed from
+     */
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * Sets the filters of the accelerometer and magnetometer values, only used
+     * when the orientation is computed from them. Must be called before register()
+     * @param gravityFilter filter of the accelerometer, null for none
+     * @param geomagneticFilter filter of the magnetometer, null for none
+     */
+    public void setInputFilters(SensorFilter gravityFilter, SensorFilter geomagneticFilter) {
+        this.gravityFilter = gravityFilter;
+        this.geomagneticFilter = geomagneticFilter;
+    }
+
+    /**
+     * Sets the filter of the rotation matrix. A ComplementaryFilter is also given the
+     * gyroscope samples, if the device has one. Must be called before register()
+     * @param orientationFilter null for none
+     */
+    public void setOrientationFilter(SensorFilter orientationFilter) {
+        this.orientationFilter = orientationFilter;
+        this.gyroscopeFilter = orientationFilter instanceof ComplementaryFilter && hasGyroscope
+                ? (ComplementaryFilter) orientationFilter : null;
+    }
+
+    /**
+     * @return whether gyroscope events are used, by a ComplementaryFilter
+     */
+    public boolean usesGyroscope() {
+        return gyroscopeFilter != null;
+    }
+
+    /**
+     * Sets up the filters for the sensors used
+     * @param filter one of FILTER_*. With a rotation vector sensor, the low-pass filter
+     *               is applied on the orientation (SLERP)
+     * @param cutoffHz cutoff frequency of the filter
+     * @return false if the filter is unknown, the data is then not filtered
+     */
+    public boolean setFilter(String filter, float cutoffHz) {
+        setInputFilters(null, null);
+        setOrientationFilter(null);
+        switch(filter) {
+            case FILTER_LOW_PASS:
+                if(source == Source.ACCELEROMETER_MAGNETOMETER) {
+                    setInputFilters(new LowPassFilter(cutoffHz), new LowPassFilter(cutoffHz));
+                } else {
+                    // the components of a rotation matrix cannot be filtered independently
+                    setOrientationFilter(new SlerpFilter(cutoffHz));
+                }
+                return true;
+            case FILTER_COMPLEMENTARY:
+                setOrientationFilter(new ComplementaryFilter(cutoffHz));
+                return true;
+            case FILTER_SLERP:
+                setOrientationFilter(new SlerpFilter(cutoffHz));
+                return true;
+            case FILTER_NONE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Registers the listener to the sensors used, it must forward their events to onSensorChanged()
+     * @param samplingPeriod SensorManager.SENSOR_DELAY_* or microseconds
+     */
+    public void register(SensorEventListener listener, int samplingPeriod) {
+        register(listener, samplingPeriod, 0, null);
+    }
+
+    /**
+     * Same as register(listener, samplingPeriod), the events may be batched in the hardware FIFO
+     * and are delivered on the thread of the given handler
+     * @param maxReportLatencyUs delay the events may be kept in the FIFO, 0 for no batching
+     * @param handler null for the main thread
+     */
+    public void register(SensorEventListener listener, int samplingPeriod, int maxReportLatencyUs, Handler handler) {
+        this.handler = handler;
+        reset();
+        registerSensors(listener, samplingPeriod, maxReportLatencyUs);
+    }
+
+    /**
+     * Registers the listener again with another sampling rate, keeping the state of the filters
+     * and the thread the events are delivered to
+     */
+    public void setSamplingRate(SensorEventListener listener, int samplingPeriod, int maxReportLatencyUs) {
+        sensorManager.unregisterListener(listener);
+        registerSensors(listener, samplingPeriod, maxReportLatencyUs);
+    }
+
+    private void registerSensors(SensorEventListener listener, int samplingPeriod, int maxReportLatencyUs) {
+        if(rotationVector != null) {
+            sensorManager.registerListener(listener, rotationVector, samplingPeriod, maxReportLatencyUs, handler);
+        } else if(source != Source.NONE) {
+            sensorManager.registerListener(listener, accelerometer, samplingPeriod, maxReportLatencyUs, handler);
+            sensorManager.registerListener(listener, magneticField, samplingPeriod, maxReportLatencyUs, handler);
+        }
+        if(gyroscopeFilter != null && source != Source.NONE) {
+            sensorManager.registerListener(listener, gyroscope, samplingPeriod, maxReportLatencyUs, handler);
+        }
+    }
+
+    public void unregister(SensorEventListener listener) {
+        sensorManager.unregisterListener(listener);
+    }
+
+    /**
+     * Handles an event of the registered sensors
+     * @return true if the rotation matrix has been updated
+     */
+    public boolean onSensorChanged(SensorEvent event) {
+        return onSensorData(event.sensor.getType(), event.values, event.values.length, event.timestamp);
+    }
+
+    /**
+     * Same as onSensorChanged(), with the content of the event
+     * @param type Sensor.TYPE_* of the sensor
+     * @param values values of the event, only read
+     * @param count number of values
+     * @param eventTimestamp timestamp of the event, in nanoseconds
+     * @return true if the rotation matrix has been updated
+     */
+    public boolean onSensorData(int type, float[] values, int count, long eventTimestamp) {
+        switch(type) {
+            case Sensor.TYPE_ROTATION_VECTOR:
+            case Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR:
+                int n = Math.min(count, 4);
+                System.arraycopy(values, 0, rotationVectorValues, 0, n);
+                if(n < 4) {
+                    // the scalar component is optional, the vector has a unit norm
+                    float x = values[0], y = values[1], z = values[2];
+                    float w2 = 1f - x * x - y * y - z * z;
+                    rotationVectorValues[3] = w2 > 0f ? (float) Math.sqrt(w2) : 0f;
+                }
+                // same as SensorManager.getRotationMatrixFromVector()
+                Quaternions.toMatrix(rotationVectorValues, rotationMatrix);
+                return onOrientation(eventTimestamp);
+            case Sensor.TYPE_ACCELEROMETER:
+                System.arraycopy(values, 0, gravity, 0, 3);
+                if(gravityFilter != null) gravityFilter.filter(gravity, eventTimestamp);
+                gravityFresh = true;
+                break;
+            case Sensor.TYPE_MAGNETIC_FIELD:
+                System.arraycopy(values, 0, geomagnetic, 0, 3);
+                if(geomagneticFilter != null) geomagneticFilter.filter(geomagnetic, eventTimestamp);
+                geomagneticFresh = true;
+                break;
+            case Sensor.TYPE_GYROSCOPE:
+                // between two absolute orientations, the gyroscope updates the estimated one
+                if(gyroscopeFilter == null || !gyroscopeFilter.onGyroscope(values, eventTimestamp)) {
+                    return false;
+                }
+                gyroscopeFilter.getRotationMatrix(rotationMatrix);
+                timestamp = eventTimestamp;
+                return true;
+            default:
+                return false;
+        }
+
+        // the matrix is only computed again once both inputs have been updated
+        if(!gravityFresh || !geomagneticFresh) {
+            return false;
+        }
+        gravityFresh = geomagneticFresh = false;
+        if(!computeRotationMatrix(rotationMatrix, gravity, geomagnetic)) {
+            // free fall, or the magnetic field is unusable
+            return false;
+        }
+        return onOrientation(eventTimestamp);
+    }
+
+    /**
+     * Same as SensorManager.getRotationMatrix(R, null, gravity, geomagnetic), without the framework
+     */
+    private static boolean computeRotationMatrix(float[] R, float[] gravity, float[] geomagnetic) {
+        float ax = gravity[0], ay = gravity[1], az = gravity[2];
+        float normSqA = ax * ax + ay * ay + az * az;
+        if(normSqA < FREE_FALL_GRAVITY_SQUARED) {
+            return false;
+        }
+        float ex = geomagnetic[0], ey = geomagnetic[1], ez = geomagnetic[2];
+        // east = magnetic field x gravity
+        float hx = ey * az - ez * ay;
+        float hy = ez * ax - ex * az;
+        float hz = ex * ay - ey * ax;
+        float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        if(normH < MIN_HORIZONTAL_FIELD) {
+            return false;
+        }
+        float invH = 1f / normH;
+        hx *= invH; hy *= invH; hz *= invH;
+        float invA = 1f / (float) Math.sqrt(normSqA);
+        ax *= invA; ay *= invA; az *= invA;
+        // north = gravity x east
+        float mx = ay * hz - az * hy;
+        float my = az * hx - ax * hz;
+        float mz = ax * hy - ay * hx;
+        R[0] = hx; R[1] = hy; R[2] = hz; R[3] = 0f;
+        R[4] = mx; R[5] = my; R[6] = mz; R[7] = 0f;
+        R[8] = ax; R[9] = ay; R[10] = az; R[11] = 0f;
+        R[12] = 0f; R[13] = 0f; R[14] = 0f; R[15] = 1f;
+        return true;
+    }
+
+    private boolean onOrientation(long eventTimestamp) {
+        if(orientationFilter != null) {
+            orientationFilter.filter(rotationMatrix, eventTimestamp);
+        }
+        timestamp = eventTimestamp;
+        return true;
+    }
+
+    /**
+     * @return the last rotation matrix (4x4), owned by this class: copy it to keep it
+     */
+    public float[] getRotationMatrix() {
+        return rotationMatrix;
+    }
+
+    /**
+     * @return the timestamp of the event the last rotation matrix comes from
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Forgets the previous inputs, e.g. when the sensors are registered again
+     */
+    public void reset() {
+        gravityFresh = geomagneticFresh = false;
+        if(gravityFilter != null) gravityFilter.reset();
+        if(geomagneticFilter != null) geomagneticFilter.reset();
+        if(orientationFilter != null) orientationFilter.reset();
+    }
+
+}
@@ -0,0 +1,115 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+/**
+ * Project: Labo4
+ * Unit quaternions stored as x, y, z, w in float[4], and their conversions from and to
+ * the 4x4 row-major rotation matrices of SensorManager. Nothing is allocated, the
+ * result may be stored in one of the operands
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class Quaternions {
+
+    // above this cosine, slerp falls back to a normalized linear interpolation
+    private static final float SLERP_LINEAR_THRESHOLD = 0.9995f;
+
+    private Quaternions() {}
+
+    static void fromMatrix(float[] m, float[] q) {
+        float trace = m[0] + m[5] + m[10];
+        float x, y, z, w;
+        if(trace > 0f) {
+            float s = (float) Math.sqrt(trace + 1f) * 2f;
+            w = 0.25f * s;
+            x = (m[9] - m[6]) / s;
+            y = (m[2] - m[8]) / s;
+            z = (m[4] - m[1]) / s;
+        } else if(m[0] > m[5] && m[0] > m[10]) {
+            float s = (float) Math.sqrt(1f + m[0] - m[5] - m[10]) * 2f;
+            w = (m[9] - m[6]) / s;
+            x = 0.25f * s;
+            y = (m[1] + m[4]) / s;
+            z = (m[2] + m[8]) / s;
+        } else if(m[5] > m[10]) {
+            float s = (float) Math.sqrt(1f + m[5] - m[0] - m[10]) * 2f;
+            w = (m[2] - m[8]) / s;
+            x = (m[1] + m[4]) / s;
+            y = 0.25f * s;
+            z = (m[6] + m[9]) / s;
+        } else {
+            float s = (float) Math.sqrt(1f + m[10] - m[0] - m[5]) * 2f;
+            w = (m[4] - m[1]) / s;
+            x = (m[2] + m[8]) / s;
+            y = (m[6] + m[9]) / s;
+            z = 0.25f * s;
+        }
+        q[0] = x; q[1] = y; q[2] = z; q[3] = w;
+        normalize(q);
+    }
+
+    static void toMatrix(float[] q, float[] m) {
+        float x = q[0], y = q[1], z = q[2], w = q[3];
+        m[0] = 1f - 2f * (y * y + z * z);
+        m[1] = 2f * (x * y - z * w);
+        m[2] = 2f * (x * z + y * w);
+        m[4] = 2f * (x * y + z * w);
+        m[5] = 1f - 2f * (x * x + z * z);
+        m[6] = 2f * (y * z - x * w);
+        m[8] = 2f * (x * z - y * w);
+        m[9] = 2f * (y * z + x * w);
+        m[10] = 1f - 2f * (x * x + y * y);
+        m[3] = m[7] = m[11] = m[12] = m[13] = m[14] = 0f;
+        m[15] = 1f;
+    }
+
+    /**
+     * out = a * b, i.e. the rotation b followed by a
+     */
+    static void multiply(float[] a, float[] b, float[] out) {
+        float x = a[3] * b[0] + a[0] * b[3] + a[1] * b[2] - a[2] * b[1];
+        float y = a[3] * b[1] - a[0] * b[2] + a[1] * b[3] + a[2] * b[0];
+        float z = a[3] * b[2] + a[0] * b[1] - a[1] * b[0] + a[2] * b[3];
+        float w = a[3] * b[3] - a[0] * b[0] - a[1] * b[1] - a[2] * b[2];
+        out[0] = x; out[1] = y; out[2] = z; out[3] = w;
+    }
+
+    /**
+     * Spherical interpolation from a (t = 0) to b (t = 1), along the shortest path
+     */
+    static void slerp(float[] a, float[] b, float t, float[] out) {
+        float dot = a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+        // q and -q are the same rotation
+        float sign = 1f;
+        if(dot < 0f) {
+            dot = -dot;
+            sign = -1f;
+        }
+        float wa, wb;
+        if(dot > SLERP_LINEAR_THRESHOLD) {
+            wa = 1f - t;
+            wb = t;
+        } else {
+            float theta = (float) Math.acos(dot);
+            float sinTheta = (float) Math.sin(theta);
+            wa = (float) Math.sin((1f - t) * theta) / sinTheta;
+            wb = (float) Math.sin(t * theta) / sinTheta;
+        }
+        wb *= sign;
+        for(int i = 0; i < 4; ++i) {
+            out[i] = wa * a[i] + wb * b[i];
+        }
+        normalize(out);
+    }
+
+    static void normalize(float[] q) {
+        float norm = (float) Math.sqrt(q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3]);
+        if(norm == 0f) {
+            q[0] = q[1] = q[2] = 0f;
+            q[3] = 1f;
+            return;
+        }
+        for(int i = 0; i < 4; ++i) {
+            q[i] /= norm;
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+/**
+ * Project: Labo4
+ * Tells whether a rotation matrix differs enough from the last accepted one to be worth rendering.
+ * Matrices are 4x4 (16 floats), as produced by SensorManager.getRotationMatrix()
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class RotationChangeDetector {
+
+    private final float[] lastMatrix = new float[16];
+    private boolean hasLastMatrix = false;
+    // cosine of the threshold angle, compared directly with the cosine of the rotation between two matrices
+    private float cosThreshold;
+
+    /**
+     * @param thresholdDegrees smallest rotation considered as a change
+     */
+    public RotationChangeDetector(float thresholdDegrees) {
+        setThreshold(thresholdDegrees);
+    }
+
+    public void setThreshold(float thresholdDegrees) {
+        this.cosThreshold = (float) Math.cos(Math.toRadians(thresholdDegrees));
+    }
+
+    /**
+     * Compares the matrix with the last accepted one, and accepts it if the rotation
+     * between them is larger than the threshold (the first matrix is always accepted)
+     * @return true if the matrix has been accepted
+     */
+    public boolean hasChanged(float[] rotationMatrix) {
+        if(hasLastMatrix) {
+            // trace(A^T * B) = 1 + 2 * cos(angle between A and B), on the 3x3 rotation parts
+            float trace = 0f;
+            for(int row = 0; row < 3; ++row) {
+                for(int col = 0; col < 3; ++col) {
+                    trace += lastMatrix[4 * row + col] * rotationMatrix[4 * row + col];
+                }
+            }
+            float cosAngle = (trace - 1f) * 0.5f;
+            if(cosAngle >= cosThreshold) {
+                return false;
+            }
+        }
+        System.arraycopy(rotationMatrix, 0, lastMatrix, 0, 16);
+        hasLastMatrix = true;
+        return true;
+    }
+
+    /**
+     * Forgets the last accepted matrix, the next one will be accepted
+     */
+    public void reset() {
+        hasLastMatrix = false;
+    }
+
+}
@@ -0,0 +1,22 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+/**
+ * Project: Labo4
+ * A stage of the sensor data filtering, working in place on primitive arrays:
+ * either raw sensor values (e.g. 3 components) or a 4x4 rotation matrix (16 floats)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public interface SensorFilter {
+
+    /**
+     * Filters the values in place
+     * @param timestamp of the values in nanoseconds, e.g. SensorEvent.timestamp
+     */
+    void filter(float[] values, long timestamp);
+
+    /**
+     * Forgets the previous values, the next ones go through unchanged
+     */
+    void reset();
+
+}
@@ -0,0 +1,86 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Project: Labo4
+ * Records sensor events into a compact binary file, to be replayed by SensorReplay.
+ *
+ * Layout (little endian):
+ *  header:  magic, version, source (OrientationFusion.Source ordinal), gyroscope (0 or 1)
+ *  records: sensor type (byte), value count (byte), timestamp (long), values (floats)
+ * A file may hold several recording sessions one after the other, each with its header.
+ * The events are buffered, nothing is allocated per event
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class SensorRecorder implements Closeable {
+
+    public static final String EXTENSION = ".syms";
+
+    // "SYMS"
+    static final int MAGIC = 0x534d5953;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 4 * 4;
+    static final int MAX_VALUES = 16;
+    static final int MAX_RECORD_SIZE = 2 + 8 + 4 * MAX_VALUES;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileOutputStream out;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Starts a recording session at the end of the file
+     * @param source the sensors the orientation is computed from
+     * @param hasGyroscope whether gyroscope events are recorded too
+     */
+    public SensorRecorder(File file, OrientationFusion.Source source, boolean hasGyroscope) throws IOException {
+        this.out = new FileOutputStream(file, true);
+        this.channel = out.getChannel();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(source.ordinal()).putInt(hasGyroscope ? 1 : 0);
+    }
+
+    /**
+     * Records an event, values beyond MAX_VALUES are dropped
+     * @param type Sensor.TYPE_* of the sensor
+     */
+    public void record(int type, float[] values, int count, long timestamp) throws IOException {
+        if(buffer.remaining() < MAX_RECORD_SIZE) {
+            flush();
+        }
+        int n = Math.min(count, MAX_VALUES);
+        buffer.put((byte) type).put((byte) n).putLong(timestamp);
+        for(int i = 0; i < n; ++i) {
+            buffer.putFloat(values[i]);
+        }
+    }
+
+    /**
+     * Writes the buffered events to the file
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Project: Labo4
+ * Reads the events of a file written by SensorRecorder, one after the other, from a
+ * memory mapping. The values of the current event are kept in a reused array.
+ * A record truncated at the end of the file (e.g. the application was killed) is ignored
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class SensorRecording {
+
+    private final ByteBuffer data;
+
+    // sensors of the first session, and of the session of the current event
+    private final OrientationFusion.Source source;
+    private final boolean hasGyroscope;
+    private OrientationFusion.Source sessionSource;
+    private boolean sessionHasGyroscope;
+
+    private int type;
+    private int count;
+    private long timestamp;
+    private final float[] values = new float[SensorRecorder.MAX_VALUES];
+
+    public SensorRecording(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            this.data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if(!readHeader()) {
+            throw new IOException(file + " is not a sensor recording");
+        }
+        this.source = sessionSource;
+        this.hasGyroscope = sessionHasGyroscope;
+    }
+
+    private boolean readHeader() {
+        if(data.remaining() < SensorRecorder.HEADER_SIZE) return false;
+        int position = data.position();
+        if(data.getInt() != SensorRecorder.MAGIC || data.getInt() != SensorRecorder.VERSION) {
+            data.position(position);
+            return false;
+        }
+        int ordinal = data.getInt();
+        OrientationFusion.Source[] sources = OrientationFusion.Source.values();
+        sessionSource = ordinal >= 0 && ordinal < sources.length ? sources[ordinal] : OrientationFusion.Source.NONE;
+        sessionHasGyroscope = data.getInt() != 0;
+        return true;
+    }
+
+    /**
+     * @return the sensors of the recording (of the first session)
+     */
+    public OrientationFusion.Source getSource() {
+        return source;
+    }
+
+    public boolean hasGyroscope() {
+        return hasGyroscope;
+    }
+
+    /**
+     * @return the sensors of the session of the current event, they may differ from the
+     * first session's ones (see getSource()) when the application was run on another device
+     */
+    public OrientationFusion.Source getSessionSource() {
+        return sessionSource;
+    }
+
+    public boolean sessionHasGyroscope() {
+        return sessionHasGyroscope;
+    }
+
+    /**
+     * Moves to the next event
+     * @return false at the end of the recording
+     */
+    public boolean next() {
+        while(true) {
+            if(data.remaining() < 2 + 8) return false;
+            int position = data.position();
+            // the header of the next session, it cannot be mistaken for a record:
+            // its second byte would be a value count above MAX_VALUES
+            if(data.getInt(position) == SensorRecorder.MAGIC && readHeader()) continue;
+
+            type = data.get() & 0xFF;
+            count = data.get() & 0xFF;
+            timestamp = data.getLong();
+            if(count > values.length || data.remaining() < 4 * count) {
+                data.position(data.limit());
+                return false;
+            }
+            for(int i = 0; i < count; ++i) {
+                values[i] = data.getFloat();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Goes back to the first event
+     */
+    public void rewind() {
+        data.position(0);
+        readHeader();
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public float[] getValues() {
+        return values;
+    }
+
+    public int getValueCount() {
+        return count;
+    }
+
+}
@@ -0,0 +1,160 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.heigvd.iict.sym_labo4.gl.TripleBufferedMatrix;
+
+/**
+ * Project: Labo4
+ * Replays a sensor recording (see SensorRecorder) through the same path as CompassActivity:
+ * fusion and filters, change detection and hand-off to the renderer, on a plain JVM
+ * (see the replaySensors gradle task). Reports the throughput and may write the
+ * orientation trace (azimuth, pitch, roll in degrees) as CSV.
+ * Usage: SensorReplay [--realtime] [--filter none|low_pass|complementary|slerp] [--cutoff hz]
+ *                     [--threshold degrees] [--repeat n] [--trace out.csv] recording.syms
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public final class SensorReplay {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    // longest wait between two events in real time, e.g. between two recording sessions
+    private static final long MAX_GAP_NS = NANOS_PER_SECOND;
+
+    private static final float[] IDENTITY = {   1f, 0f ,0f ,0f,
+                                                0f, 1f ,0f ,0f,
+                                                0f, 0f ,1f ,0f,
+                                                0f, 0f ,0f ,1f };
+
+    private SensorReplay() { }
+
+    public static void main(String[] args) throws IOException {
+        boolean realtime = false;
+        String filter = OrientationFusion.FILTER_NONE;
+        float cutoff = 2f;
+        float threshold = 0.5f;
+        int repeat = 1;
+        File trace = null;
+        File recordingFile = null;
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "--realtime": realtime = true; break;
+                    case "--filter": filter = args[++i]; break;
+                    case "--cutoff": cutoff = Float.parseFloat(args[++i]); break;
+                    case "--threshold": threshold = Float.parseFloat(args[++i]); break;
+                    case "--repeat": repeat = Integer.parseInt(args[++i]); break;
+                    case "--trace": trace = new File(args[++i]); break;
+                    default: recordingFile = new File(args[i]); break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            recordingFile = null;
+        }
+        if (recordingFile == null) {
+            System.err.println("Usage: SensorReplay [--realtime] [--filter none|low_pass|complementary|slerp]"
+                    + " [--cutoff hz] [--threshold degrees] [--repeat n] [--trace out.csv] recording.syms");
+            System.exit(1);
+        }
+
+        SensorRecording recording = new SensorRecording(recordingFile);
+        OrientationFusion fusion = new OrientationFusion(recording.getSource(), recording.hasGyroscope());
+        if (!fusion.setFilter(filter, cutoff)) {
+            System.err.println("Unknown filter " + filter);
+            System.exit(1);
+        }
+        RotationChangeDetector detector = new RotationChangeDetector(threshold);
+
+        long start = System.nanoTime();
+        Stats stats;
+        try (Writer out = trace != null ? new BufferedWriter(new FileWriter(trace)) : null) {
+            stats = replay(recording, fusion, detector, repeat, realtime, out);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US,
+                "%s: %d events, %d orientations, %d renders in %.1f ms, %.0f events/s (%s, filter %s)",
+                recordingFile, stats.events, stats.orientations, stats.renders, elapsed / 1e6,
+                stats.events * (double) NANOS_PER_SECOND / Math.max(1, elapsed),
+                recording.getSource(), filter));
+    }
+
+    /**
+     * Counters of a replay
+     */
+    static final class Stats {
+        // events read, rotation matrices computed, and rendered
+        long events = 0, orientations = 0, renders = 0;
+    }
+
+    /**
+     * Replays the whole recording repeat times, the fusion and the detector are reset before each
+     * @param realtime whether to wait between the events as they were recorded
+     * @param out where the orientation trace is written as CSV, null for none
+     */
+    static Stats replay(SensorRecording recording, OrientationFusion fusion, RotationChangeDetector detector,
+                        int repeat, boolean realtime, Writer out) throws IOException {
+        TripleBufferedMatrix handoff = new TripleBufferedMatrix(IDENTITY);
+        Stats stats = new Stats();
+        if (out != null) out.write("timestamp,azimuth,pitch,roll\n");
+        StringBuilder line = new StringBuilder();
+        for (int r = 0; r < repeat; ++r) {
+            recording.rewind();
+            fusion.reset();
+            detector.reset();
+            long firstEvent = -1, replayStart = System.nanoTime();
+            long lastEvent = 0, offset = 0;
+            while (recording.next()) {
+                long timestamp = recording.getTimestamp();
+                if (realtime) {
+                    if (firstEvent < 0) firstEvent = timestamp;
+                    // gaps are shortened, e.g. between two sessions
+                    long gap = timestamp - lastEvent;
+                    if (lastEvent != 0 && (gap < 0 || gap > MAX_GAP_NS)) {
+                        offset += gap - MAX_GAP_NS;
+                    }
+                    lastEvent = timestamp;
+                    long wait = replayStart + (timestamp - firstEvent - offset) - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                }
+                stats.events++;
+                if (!fusion.onSensorData(recording.getType(), recording.getValues(),
+                        recording.getValueCount(), timestamp)) {
+                    continue;
+                }
+                stats.orientations++;
+                float[] rotationMatrix = fusion.getRotationMatrix();
+                if (!detector.hasChanged(rotationMatrix)) {
+                    continue;
+                }
+                // what the renderer would draw for this event
+                handoff.publish(rotationMatrix, fusion.getTimestamp());
+                float[] drawn = handoff.latest();
+                stats.renders++;
+                if (out != null) {
+                    line.setLength(0);
+                    appendOrientation(line, handoff.getTimestamp(), drawn);
+                    out.append(line);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Appends a CSV line with the timestamp, and the azimuth, pitch and roll of the
+     * matrix, in degrees (same as SensorManager.getOrientation())
+     */
+    private static void appendOrientation(StringBuilder line, long timestamp, float[] R) {
+        line.append(timestamp).append(',')
+                .append((float) Math.toDegrees(Math.atan2(R[1], R[5]))).append(',')
+                .append((float) Math.toDegrees(Math.asin(-R[9]))).append(',')
+                .append((float) Math.toDegrees(Math.atan2(-R[8], R[10]))).append('\n');
+    }
+
+}
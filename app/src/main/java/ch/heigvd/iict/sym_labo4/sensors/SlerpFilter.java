@@ -0,0 +1,57 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+/**
+ * Project: Labo4
+ * Smooths a 4x4 rotation matrix by interpolating spherically (on its quaternion) from the
+ * previous output towards the new matrix. Unlike a component-wise low-pass, the result
+ * always is a rotation. The interpolation factor follows the interval between the matrices.
+ * The state can also be advanced between two matrices, see ComplementaryFilter
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class SlerpFilter implements SensorFilter {
+
+    // filtered orientation, as a quaternion
+    final float[] state = new float[4];
+    private final float[] input = new float[4];
+    private float timeConstant;
+    private long lastTimestamp = 0;
+    private boolean hasState = false;
+
+    /**
+     * @param cutoffHz cutoff frequency, in Hertz
+     */
+    public SlerpFilter(float cutoffHz) {
+        setCutoff(cutoffHz);
+    }
+
+    public void setCutoff(float cutoffHz) {
+        this.timeConstant = (float) (1.0 / (2.0 * Math.PI * cutoffHz));
+    }
+
+    @Override
+    public void filter(float[] rotationMatrix, long timestamp) {
+        float dt = (timestamp - lastTimestamp) * 1e-9f;
+        lastTimestamp = timestamp;
+        if(!hasState || dt <= 0f) {
+            Quaternions.fromMatrix(rotationMatrix, state);
+            hasState = true;
+            return;
+        }
+        Quaternions.fromMatrix(rotationMatrix, input);
+        Quaternions.slerp(state, input, dt / (timeConstant + dt), state);
+        Quaternions.toMatrix(state, rotationMatrix);
+    }
+
+    @Override
+    public void reset() {
+        hasState = false;
+    }
+
+    /**
+     * @return false until the first matrix, and after reset()
+     */
+    boolean hasState() {
+        return hasState;
+    }
+
+}
@@ -7,6 +7,8 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.content.Context;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -16,14 +18,25 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.io.File;
+import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.Month;
-import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.UUID;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.heigvd.iict.sym_labo4.ble.ConnectionParameters;
+import ch.heigvd.iict.sym_labo4.ble.ConnectionProfile;
+import ch.heigvd.iict.sym_labo4.ble.IntegerStreamWriter;
+import ch.heigvd.iict.sym_labo4.ble.NotificationRing;
+import ch.heigvd.iict.sym_labo4.ble.NotificationStore;
+import ch.heigvd.iict.sym_labo4.ble.PeriodicSampler;
+import ch.heigvd.iict.sym_labo4.ble.SymCodecs;
+import ch.heigvd.iict.sym_labo4.ble.TelemetryLog;
+import ch.heigvd.iict.sym_labo4.ble.TimeSeries;
+import ch.heigvd.iict.sym_labo4.ble.WriteThroughput;
 import no.nordicsemi.android.ble.BleManager;
+import no.nordicsemi.android.ble.PhyRequest;
 import no.nordicsemi.android.ble.data.Data;
 import no.nordicsemi.android.ble.observer.ConnectionObserver;
 
@@ -37,6 +50,24 @@ public class BleOperationsViewModel extends AndroidViewModel {
 
     private static final String TAG = BleOperationsViewModel.class.getSimpleName();
 
+    public static final long DEFAULT_TEMPERATURE_PERIOD_MS = 5000;
+    // temperatures kept for the UI, an hour at the default period
+    private static final int TEMPERATURE_HISTORY = 720;
+
+    // records received between two drains, and kept at full resolution until drained
+    private static final int NOTIFICATION_RING_CAPACITY = 1024;
+    private static final int NOTIFICATION_HISTORY = 8192;
+    // downsampled history for the UI: 5 minutes by second
+    private static final long NOTIFICATION_BUCKET_MS = 1000;
+    private static final int NOTIFICATION_BUCKETS = 300;
+    // the LiveData are updated at most at this period, however many notifications are received
+    private static final long NOTIFICATION_DRAIN_DELAY_MS = 100;
+
+    // telemetry log in the files of the application, at most 16 MB
+    public static final String TELEMETRY_DIRECTORY = "telemetry";
+    private static final long TELEMETRY_SEGMENT_SIZE = 1024 * 1024;
+    private static final int TELEMETRY_SEGMENTS = 16;
+
     private SYMBleManager ble = null;
     private BluetoothGatt mConnection = null;
 
@@ -49,12 +80,47 @@ public class BleOperationsViewModel extends AndroidViewModel {
     private final MutableLiveData<Integer> mTemperature = new MutableLiveData<>(0);
     public LiveData<Integer> temperatureChanged() { return mTemperature; }
 
+    //temperatures in degrees Celsius, a snapshot is published after each sample
+    private final TimeSeries temperatureSeries = new TimeSeries(TEMPERATURE_HISTORY);
+    private final MutableLiveData<TimeSeries> mTemperatureSeries = new MutableLiveData<>(temperatureSeries.snapshot());
+    public LiveData<TimeSeries> temperatureSeriesChanged() { return mTemperatureSeries; }
+
     private final MutableLiveData<Integer> mButtonClicked = new MutableLiveData<>(0);
     public LiveData<Integer> buttonClickedChanged() { return mButtonClicked; }
 
     private final MutableLiveData<LocalDateTime> mTime = new MutableLiveData<>();
     public LiveData<LocalDateTime> timeChanged() { return mTime; }
 
+    private final MutableLiveData<WriteThroughput> mIntegerStream = new MutableLiveData<>();
+    public LiveData<WriteThroughput> integerStreamChanged() { return mIntegerStream; }
+
+    private final MutableLiveData<ConnectionParameters> mConnectionParameters = new MutableLiveData<>(ConnectionParameters.DEFAULT);
+    public LiveData<ConnectionParameters> connectionParametersChanged() { return mConnectionParameters; }
+
+    //link parameters requested on connection
+    private ConnectionProfile connectionProfile = ConnectionProfile.LOW_LATENCY;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    //values received from the GATT callbacks (producer), drained on the main thread (consumer)
+    private final NotificationRing notificationRing = new NotificationRing(NOTIFICATION_RING_CAPACITY);
+    private final NotificationStore notificationStore = new NotificationStore(NOTIFICATION_BUCKET_MS, NOTIFICATION_BUCKETS, NOTIFICATION_HISTORY);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainNotifications = this::drainNotifications;
+    private final NotificationRing.RecordHandler onNotification = this::onNotification;
+
+    //every record drained is also persisted, see TelemetryReader
+    private final TelemetryLog telemetryLog;
+
+    //periodic temperature reads, only while ready and in foreground
+    private final PeriodicSampler temperatureSampler = new PeriodicSampler(mainHandler, this::sampleTemperature);
+    //only the reads of the sampler end its samples, not the manual ones
+    private final Runnable temperatureSampleDone = temperatureSampler::sampleDone;
+    private boolean temperatureSampling = false;
+    private boolean temperatureNotified = false;
+    private boolean isReady = false;
+    private boolean inForeground = true;
+
     //Services and Characteristics of the SYM Pixl
     private BluetoothGattService timeService = null, symService = null;
     private BluetoothGattCharacteristic currentTimeChar = null, integerChar = null, temperatureChar = null, buttonClickChar = null;
@@ -67,6 +133,7 @@ public class BleOperationsViewModel extends AndroidViewModel {
 
     public BleOperationsViewModel(Application application) {
         super(application);
+        this.telemetryLog = new TelemetryLog(getTelemetryDirectory(), TELEMETRY_SEGMENT_SIZE, TELEMETRY_SEGMENTS);
         this.ble = new SYMBleManager(application.getApplicationContext());
         this.ble.setConnectionObserver(this.bleConnectionObserver);
     }
@@ -75,6 +142,14 @@ public class BleOperationsViewModel extends AndroidViewModel {
     protected void onCleared() {
         super.onCleared();
         Log.d(TAG, "onCleared");
+        this.temperatureSampler.stop();
+        this.mainHandler.removeCallbacks(this.drainNotifications);
+        drainNotifications();
+        try {
+            this.telemetryLog.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Telemetry log failed", e);
+        }
         this.ble.disconnect();
     }
 
@@ -96,9 +171,135 @@ public class BleOperationsViewModel extends AndroidViewModel {
         }
     }
 
+    public ConnectionProfile getConnectionProfile() {
+        return connectionProfile;
+    }
+
+    /**
+     * Changes the link parameters, requested immediately if connected, otherwise on the next connection
+     */
+    public void setConnectionProfile(ConnectionProfile profile) {
+        if(profile == connectionProfile) return;
+        Log.d(TAG, "Connection profile: " + profile);
+        this.connectionProfile = profile;
+        if(isConnected().getValue()) {
+            ble.applyConnectionProfile(profile);
+        }
+    }
+
     public boolean readTemperature() {
+        return readTemperature(null);
+    }
+
+    private boolean readTemperature(Runnable onDone) {
         if(!isConnected().getValue() || temperatureChar == null) return false;
-        return ble.readTemperature();
+        return ble.readTemperature(onDone);
+    }
+
+    /**
+     * Reads the temperature every periodMs (or follows its notifications if the peripheral
+     * supports them), the samples are published by temperatureChanged() and temperatureSeriesChanged()
+     */
+    public void startTemperatureSampling(long periodMs) {
+        Log.d(TAG, "Temperature sampling every " + periodMs + " ms");
+        temperatureSampling = true;
+        temperatureSampler.start(periodMs);
+        updateTemperatureSampling();
+    }
+
+    public void stopTemperatureSampling() {
+        temperatureSampling = false;
+        temperatureSampler.stop();
+    }
+
+    public boolean isTemperatureSampling() {
+        return temperatureSampling;
+    }
+
+    /**
+     * The periodic reads are suspended while the application is in background
+     */
+    public void setInForeground(boolean inForeground) {
+        this.inForeground = inForeground;
+        updateTemperatureSampling();
+    }
+
+    private void updateTemperatureSampling() {
+        if(isReady && inForeground)
+            temperatureSampler.resume();
+        else
+            temperatureSampler.pause();
+    }
+
+    private boolean sampleTemperature() {
+        //nothing to poll if the peripheral notifies its temperature
+        if(temperatureNotified) return false;
+        return readTemperature(temperatureSampleDone);
+    }
+
+    /**
+     * @return the values received for the characteristic (NotificationStore.TEMPERATURE, ...),
+     * downsampled by second over the last 5 minutes
+     * @param aggregate NotificationStore.MIN, MAX, MEAN or LAST
+     */
+    public TimeSeries notificationSnapshot(int characteristic, int aggregate) {
+        drainNotifications();
+        return notificationStore.snapshot(characteristic, aggregate);
+    }
+
+    /**
+     * Gives all the values received since the last call (at most NOTIFICATION_HISTORY), oldest first,
+     * from the main thread
+     * @return the number of records given
+     */
+    public int drainNotificationHistory(NotificationRing.RecordHandler handler) {
+        drainNotifications();
+        return notificationStore.drainHistory(handler);
+    }
+
+    /**
+     * @return the directory of the telemetry log, to be read with a TelemetryReader
+     */
+    public File getTelemetryDirectory() {
+        return new File(getApplication().getFilesDir(), TELEMETRY_DIRECTORY);
+    }
+
+    /*
+     * Producer side, from the GATT callbacks: nothing is allocated, the main thread is woken
+     * up once per NOTIFICATION_DRAIN_DELAY_MS at most
+     */
+    private void record(int characteristic, int value) {
+        if(!notificationRing.offer(System.currentTimeMillis(), characteristic, value)) {
+            Log.w(TAG, "Notification dropped, " + notificationRing.getDropped() + " so far");
+        }
+        if(drainScheduled.compareAndSet(false, true)) {
+            mainHandler.postDelayed(drainNotifications, NOTIFICATION_DRAIN_DELAY_MS);
+        }
+    }
+
+    /*
+     * Consumer side, on the main thread: moves the records to the store and publishes the last values
+     */
+    private void drainNotifications() {
+        drainScheduled.set(false);
+        if(notificationRing.drain(onNotification) == 0) return;
+
+        if(notificationStore.hasValue(NotificationStore.BUTTON_CLICKS)) {
+            int clicks = notificationStore.getLastValue(NotificationStore.BUTTON_CLICKS);
+            if(mButtonClicked.getValue() == null || mButtonClicked.getValue() != clicks) mButtonClicked.setValue(clicks);
+        }
+        if(notificationStore.hasValue(NotificationStore.CURRENT_TIME) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            long seconds = SymCodecs.EPOCH_2000 + notificationStore.getLastValue(NotificationStore.CURRENT_TIME);
+            LocalDateTime time = LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+            if(!time.equals(mTime.getValue())) mTime.setValue(time);
+        }
+    }
+
+    private void onNotification(long timestamp, int characteristic, int value) {
+        notificationStore.onRecord(timestamp, characteristic, value);
+        if(!telemetryLog.append(timestamp, characteristic, value) && telemetryLog.getFailure() == null) {
+            Log.w(TAG, "Telemetry record dropped, " + telemetryLog.getDropped() + " so far");
+        }
     }
 
     public boolean writeInteger(int value) {
@@ -106,6 +307,21 @@ public class BleOperationsViewModel extends AndroidViewModel {
         return ble.writeInteger(value);
     }
 
+    /**
+     * Streams the values to the integer characteristic, the progress and throughput
+     * are published by integerStreamChanged(). A stream already running is cancelled
+     * @param coalesce sends as many values per write as the MTU allows, the peripheral
+     *                 must accept writes longer than one integer
+     */
+    public boolean writeIntegers(int[] values, boolean coalesce) {
+        if(!isConnected().getValue() || integerChar == null) return false;
+        return ble.writeIntegers(values, coalesce);
+    }
+
+    public void cancelIntegerStream() {
+        ble.cancelIntegerStream();
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.O)
     public boolean writeCurrentTime(LocalDateTime value) {
         if(!isConnected().getValue() || currentTimeChar == null) return false;
@@ -134,6 +350,8 @@ public class BleOperationsViewModel extends AndroidViewModel {
         @Override
         public void onDeviceReady(@NonNull BluetoothDevice device) {
             Log.d(TAG, "onDeviceReady");
+            isReady = true;
+            updateTemperatureSampling();
         }
 
         @Override
@@ -150,14 +368,28 @@ public class BleOperationsViewModel extends AndroidViewModel {
             else
                 Log.d(TAG, "onDeviceDisconnected");
 
+            isReady = false;
+            temperatureNotified = false;
+            updateTemperatureSampling();
+            ble.cancelIntegerStream();
+            mConnectionParameters.setValue(ConnectionParameters.DEFAULT);
             mIsConnected.setValue(false);
         }
     };
 
     private class SYMBleManager extends BleManager {
 
+        // Write Without Response packets handed to the GATT queue at once, enough to fill
+        // the connection events while keeping the queue (and the stream latency) short
+        private static final int MAX_WRITES_IN_FLIGHT = 4;
+
+        private final byte[] integerValue = new byte[SymCodecs.INTEGER_SIZE];
+        private final IntegerStreamWriter integerStream;
+
         private SYMBleManager(Context applicationContext) {
             super(applicationContext);
+            this.integerStream = new IntegerStreamWriter(this::sendIntegers,
+                    this::onIntegerStreamProgress, MAX_WRITES_IN_FLIGHT);
         }
 
         /**
@@ -198,14 +430,30 @@ public class BleOperationsViewModel extends AndroidViewModel {
                     @Override
                     protected void initialize() {
                         setNotificationCallback(buttonClickChar).with(
-                                (BluetoothDevice b, Data d) ->
-                                        mButtonClicked.setValue(d.getIntValue(Data.FORMAT_UINT8, 0))
+                                (BluetoothDevice b, Data d) -> {
+                                    int clicks = SymCodecs.decodeButtonClicks(d.getValue());
+                                    if (clicks != SymCodecs.INVALID) record(NotificationStore.BUTTON_CLICKS, clicks);
+                                }
                         );
                         setNotificationCallback(currentTimeChar).with(
                                 (BluetoothDevice b, Data d) ->
                                         readCurrentTime(d)
                         );
 
+                        //the temperature is polled unless the peripheral can notify it
+                        if ((temperatureChar.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0) {
+                            setNotificationCallback(temperatureChar).with(
+                                    (BluetoothDevice b, Data d) ->
+                                            onTemperature(d)
+                            );
+                            enableNotifications(temperatureChar)
+                                    .done(device -> temperatureNotified = true)
+                                    .fail((device, status) -> {
+                                        Log.w(TAG, "Temperature notifications refused (" + status + "), polling it");
+                                    })
+                                    .enqueue();
+                        }
+
                         beginAtomicRequestQueue()
                                 .add(enableNotifications(buttonClickChar)
                                         .fail((device, status) -> {
@@ -224,6 +472,8 @@ public class BleOperationsViewModel extends AndroidViewModel {
                                     Log.d(TAG, "Subscribed!");
                                 })
                                 .enqueue();
+
+                        applyConnectionProfile(connectionProfile);
                     }
 
                     @Override
@@ -293,81 +543,134 @@ public class BleOperationsViewModel extends AndroidViewModel {
             return hasService;
         }
 
-        public boolean readTemperature() {
-            readCharacteristic(temperatureChar).with(
-                    (BluetoothDevice b, Data d) ->
-                        mTemperature.setValue(d.getIntValue(Data.FORMAT_UINT16, 0))
-            ).enqueue();
+        /**
+         * Requests the MTU, connection priority and PHY of the profile, each request may fail
+         * independently (e.g. 2M PHY not supported by the phone), the negotiated values are
+         * published in mConnectionParameters
+         */
+        public void applyConnectionProfile(ConnectionProfile profile) {
+            updateConnectionParameters(mConnectionParameters.getValue().withProfile(profile));
+
+            // the MTU can only be negotiated once per connection, the current one is kept
+            if (profile.getMtu() > getMtu()) {
+                requestMtu(profile.getMtu())
+                        .with((device, mtu) ->
+                                updateConnectionParameters(mConnectionParameters.getValue().withMtu(mtu)))
+                        .fail((device, status) -> {
+                            Log.w(TAG, "MTU request failed: " + status + ", keeping " + getMtu());
+                            updateConnectionParameters(mConnectionParameters.getValue().withMtu(getMtu()));
+                        })
+                        .enqueue();
+            }
+
+            // only reported from Android 8
+            requestConnectionPriority(profile.getConnectionPriority())
+                    .with((device, interval, latency, timeout) ->
+                            updateConnectionParameters(mConnectionParameters.getValue()
+                                    .withConnectionInterval(interval, latency, timeout)))
+                    .fail((device, status) ->
+                            Log.w(TAG, "Connection priority request failed: " + status))
+                    .enqueue();
+
+            // the PHY requests need Android 8 and a phone supporting them, 1M is assumed otherwise
+            if (profile.getPhyMask() != 0) {
+                setPreferredPhy(profile.getPhyMask(), profile.getPhyMask(), PhyRequest.PHY_OPTION_NO_PREFERRED)
+                        .with(this::onPhyChanged)
+                        .fail((device, status) ->
+                                Log.w(TAG, "PHY request failed: " + status))
+                        .enqueue();
+            } else {
+                readPhy()
+                        .with(this::onPhyChanged)
+                        .fail((device, status) ->
+                                Log.w(TAG, "PHY read failed: " + status))
+                        .enqueue();
+            }
+        }
+
+        private void onPhyChanged(BluetoothDevice device, int txPhy, int rxPhy) {
+            updateConnectionParameters(mConnectionParameters.getValue().withPhy(txPhy, rxPhy));
+        }
+
+        private void updateConnectionParameters(ConnectionParameters parameters) {
+            Log.d(TAG, "Connection parameters: " + parameters);
+            mConnectionParameters.setValue(parameters);
+        }
+
+        /**
+         * @param onDone run once the read is over, successfully or not, may be null
+         */
+        public boolean readTemperature(Runnable onDone) {
+            readCharacteristic(temperatureChar)
+                    .with((BluetoothDevice b, Data d) -> onTemperature(d))
+                    .done(device -> {
+                        if (onDone != null) onDone.run();
+                    })
+                    .fail((device, status) -> {
+                        Log.w(TAG, "Temperature read failed: " + status);
+                        if (onDone != null) onDone.run();
+                    })
+                    .enqueue();
             return true;
         }
 
+        private void onTemperature(Data d) {
+            int temperature = SymCodecs.decodeTemperature(d.getValue());
+            if (temperature == SymCodecs.INVALID) return;
+            mTemperature.setValue(temperature);
+            record(NotificationStore.TEMPERATURE, temperature);
+            //in tenths of a degree
+            temperatureSeries.add(System.currentTimeMillis(), temperature / 10f);
+            mTemperatureSeries.setValue(temperatureSeries.snapshot());
+        }
+
         public boolean writeInteger(int value) {
-            // Transform int 32 bit BE to int 32 bits LE
-            ByteBuffer bb = ByteBuffer.wrap(new byte[]{(byte) value});
-            bb.order(ByteOrder.LITTLE_ENDIAN);
+            // 32 bits LE, the request copies the buffer so it can be reused
+            SymCodecs.encodeInteger(value, integerValue, 0);
+            writeCharacteristic(integerChar, integerValue, 0, SymCodecs.INTEGER_SIZE,
+                    BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE).enqueue();
+            return true;
+        }
 
-            Data data = new Data(bb.array());
-            writeCharacteristic(integerChar, data, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE).enqueue();
+        public boolean writeIntegers(int[] values, boolean coalesce) {
+            int valuesPerPacket = coalesce ? IntegerStreamWriter.valuesPerPacket(getMtu()) : 1;
+            integerStream.start(values, valuesPerPacket);
             return true;
         }
 
-        @RequiresApi(api = Build.VERSION_CODES.O)
+        public void cancelIntegerStream() {
+            integerStream.cancel();
+        }
+
+        private void sendIntegers(byte[] packet, int length, int stream) {
+            writeCharacteristic(integerChar, packet, 0, length, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE)
+                    .done(device -> integerStream.onPacketDone(stream, true))
+                    .fail((device, status) -> {
+                        Log.e(TAG, "Integer stream write failed: " + status);
+                        integerStream.onPacketDone(stream, false);
+                    })
+                    .enqueue();
+        }
+
+        private void onIntegerStreamProgress(WriteThroughput throughput) {
+            if (throughput.isFinished()) Log.d(TAG, "Integer stream: " + throughput);
+            mIntegerStream.setValue(throughput);
+        }
+
         public void readCurrentTime(Data d) {
-            int year = 0, month = 0, day = 0, hour = 0, minutes = 0,
-                    seconds = 0, dayOfWeek = 0, fractions256 = 0, raison = 0;
-
-            // Here we only use what the constructor of LocalDateTime can take as arguments
-            try {
-                year = d.getIntValue(Data.FORMAT_UINT16, 0);
-                month = d.getIntValue(Data.FORMAT_UINT8, 2);
-                day = d.getIntValue(Data.FORMAT_UINT8, 3);
-                hour = d.getIntValue(Data.FORMAT_UINT8, 4);
-                minutes = d.getIntValue(Data.FORMAT_UINT8, 5);
-                seconds = d.getIntValue(Data.FORMAT_UINT8, 6);
-                dayOfWeek = d.getIntValue(Data.FORMAT_UINT8, 7);
-                fractions256 = d.getIntValue(Data.FORMAT_UINT8, 8);
-                raison = d.getIntValue(Data.FORMAT_UINT8, 9);
-            } catch (NullPointerException e) {
-                Log.d(TAG, e.getMessage());
+            int seconds = SymCodecs.decodeCurrentTimeSeconds(d.getValue());
+            if (seconds == SymCodecs.INVALID) {
+                Log.d(TAG, "Invalid current time: " + d);
+                return;
             }
-
-            mTime.setValue(LocalDateTime.of(year, Month.of(month), day, hour, minutes, seconds));
+            record(NotificationStore.CURRENT_TIME, seconds);
         }
 
         @RequiresApi(api = Build.VERSION_CODES.O)
         public boolean writeCurrentTime(LocalDateTime localDateTime) {
-            // Transform the year value to a string of bits
-            String year = Integer.toBinaryString(localDateTime.getYear());
-
-            // Take the lower parts of the bits
-            int lowerBits;
-            if(year.length() <= 8)
-                lowerBits = Integer.parseInt(year, 2);
-            else
-                lowerBits = Integer.parseInt(year.substring(year.length() - 8), 2);
-
-            // Take the upper part of the bits
-            int upperBits = 0;
-            if(year.length() > 8)
-                upperBits = Integer.parseInt(year.substring(0, year.length() - 8), 2);
-
-            // Calculate the fraction number
-            int fractions256 = (int)
-                    (localDateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
-                    * 256);
-
-            Data newTime = new Data(new byte[]{
-                    (byte) lowerBits,
-                    (byte) upperBits,
-                    (byte) localDateTime.getMonthValue(),
-                    (byte) localDateTime.getDayOfMonth(),
-                    (byte) localDateTime.getHour(),
-                    (byte) localDateTime.getMinute(),
-                    (byte) localDateTime.getSecond(),
-                    (byte) localDateTime.getDayOfWeek().getValue(),
-                    (byte) fractions256,
-                    (byte) 0x03,
-            });
+            byte[] value = new byte[SymCodecs.CURRENT_TIME_SIZE];
+            SymCodecs.encodeCurrentTime(localDateTime, value, 0);
+            Data newTime = new Data(value);
 
             writeCharacteristic(currentTimeChar, newTime, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE).enqueue();
             return true;
@@ -0,0 +1,145 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: Labo4
+ * Flow control of IntegerStreamWriter, with a transport completing the packets on demand
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class IntegerStreamWriterTest {
+
+    private static final int MAX_IN_FLIGHT = 4;
+
+    /**
+     * Keeps the packets sent and their stream, in order
+     */
+    private static final class QueuedTransport implements IntegerStreamWriter.Transport {
+        final List<int[]> packets = new ArrayList<>();
+        final List<Integer> streams = new ArrayList<>();
+        int completed = 0;
+
+        @Override
+        public void send(byte[] packet, int length, int stream) {
+            ByteBuffer bb = ByteBuffer.wrap(packet, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+            int[] values = new int[length / SymCodecs.INTEGER_SIZE];
+            for (int i = 0; i < values.length; ++i) values[i] = bb.getInt();
+            packets.add(values);
+            streams.add(stream);
+        }
+
+        int pending() {
+            return packets.size() - completed;
+        }
+
+        void completeNext(IntegerStreamWriter writer, boolean success) {
+            writer.onPacketDone(streams.get(completed++), success);
+        }
+    }
+
+    @Test
+    public void valuesAreCoalescedAndFlowControlled() {
+        QueuedTransport transport = new QueuedTransport();
+        List<WriteThroughput> reports = new ArrayList<>();
+        IntegerStreamWriter writer = new IntegerStreamWriter(transport, reports::add, MAX_IN_FLIGHT);
+
+        writer.start(range(0, 50), 4);
+        assertEquals(MAX_IN_FLIGHT, transport.pending());
+        while (transport.pending() > 0) {
+            assertTrue(transport.pending() <= MAX_IN_FLIGHT);
+            transport.completeNext(writer, true);
+        }
+
+        // 12 full packets and a last one of 2 values
+        assertEquals(13, transport.packets.size());
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, transport.packets.get(0));
+        assertArrayEquals(new int[] { 48, 49 }, transport.packets.get(12));
+        assertFalse(writer.isRunning());
+        WriteThroughput last = reports.get(reports.size() - 1);
+        assertTrue(last.isFinished());
+        assertTrue(last.isComplete());
+        assertEquals(50, last.getValues());
+        assertEquals(13, last.getPackets());
+        assertEquals(50 * SymCodecs.INTEGER_SIZE, last.getBytes());
+    }
+
+    @Test
+    public void failureStopsTheStream() {
+        QueuedTransport transport = new QueuedTransport();
+        IntegerStreamWriter writer = new IntegerStreamWriter(transport, null, MAX_IN_FLIGHT);
+
+        writer.start(range(0, 20), 1);
+        transport.completeNext(writer, true);
+        transport.completeNext(writer, false);
+        assertFalse(writer.isRunning());
+        // the packets still in flight are ignored
+        while (transport.pending() > 0) transport.completeNext(writer, true);
+        assertEquals(1, writer.getThroughput().getValues());
+        assertEquals(1, writer.getThroughput().getFailures());
+        assertEquals(MAX_IN_FLIGHT + 1, transport.packets.size());
+    }
+
+    /**
+     * The packets of a cancelled stream complete after the next stream has started:
+     * they must not be counted in it, nor release its flow control
+     */
+    @Test
+    public void completionsOfACancelledStreamAreIgnored() {
+        QueuedTransport transport = new QueuedTransport();
+        IntegerStreamWriter writer = new IntegerStreamWriter(transport, null, MAX_IN_FLIGHT);
+
+        writer.start(range(0, 100), 1);
+        transport.completeNext(writer, true);
+        int stale = transport.pending();
+        assertEquals(MAX_IN_FLIGHT, stale);
+
+        writer.start(range(1000, 1010), 2);
+        assertEquals(MAX_IN_FLIGHT, transport.pending() - stale);
+        int sentBefore = transport.packets.size();
+        for (int i = 0; i < stale; ++i) transport.completeNext(writer, true);
+        // nothing released: no new packet, nothing written
+        assertEquals(sentBefore, transport.packets.size());
+        assertEquals(0, writer.getThroughput().getValues());
+        assertEquals(0, writer.getThroughput().getPackets());
+
+        while (transport.pending() > 0) transport.completeNext(writer, true);
+        WriteThroughput throughput = writer.getThroughput();
+        assertTrue(throughput.isComplete());
+        assertEquals(10, throughput.getValues());
+        assertEquals(5, throughput.getPackets());
+        assertArrayEquals(new int[] { 1008, 1009 }, transport.packets.get(transport.packets.size() - 1));
+    }
+
+    @Test
+    public void emptyStream() {
+        QueuedTransport transport = new QueuedTransport();
+        IntegerStreamWriter writer = new IntegerStreamWriter(transport, null, MAX_IN_FLIGHT);
+        writer.start(new int[0], 1);
+        assertFalse(writer.isRunning());
+        assertTrue(writer.getThroughput().isComplete());
+        assertEquals(0, transport.packets.size());
+    }
+
+    @Test
+    public void valuesPerPacketFollowsTheMtu() {
+        assertEquals(5, IntegerStreamWriter.valuesPerPacket(23));
+        assertEquals(61, IntegerStreamWriter.valuesPerPacket(247));
+        assertEquals(1, IntegerStreamWriter.valuesPerPacket(3));
+    }
+
+    private static int[] range(int from, int to) {
+        int[] values = new int[to - from];
+        for (int i = 0; i < values.length; ++i) values[i] = from + i;
+        return values;
+    }
+}
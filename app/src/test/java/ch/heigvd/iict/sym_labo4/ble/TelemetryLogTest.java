@@ -0,0 +1,181 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: Labo4
+ * Records written by TelemetryLog and read back by TelemetryReader
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class TelemetryLogTest {
+
+    private static final long SEGMENT_SIZE = TelemetryLog.HEADER_SIZE + 100 * TelemetryLog.RECORD_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripAcrossSegments() throws IOException {
+        File directory = folder.newFolder();
+        List<long[]> expected = new ArrayList<>();
+        try (TelemetryLog log = new TelemetryLog(directory, SEGMENT_SIZE, 100)) {
+            for (int i = 0; i < 1000; ++i) {
+                long timestamp = 1600000000000L + 10L * i;
+                append(log, expected, timestamp, i % 3, i * 7 - 500);
+            }
+        }
+        TelemetryReader reader = new TelemetryReader(directory);
+        assertEquals(10, reader.getSegmentCount());
+        assertEquals(1000, reader.getRecordCount());
+        assertRecords(expected, scan(reader, Long.MIN_VALUE, Long.MAX_VALUE));
+
+        // a range across two segments: records 95 to 204
+        List<long[]> range = scan(reader, 1600000000000L + 950, 1600000000000L + 2050);
+        assertRecords(expected.subList(95, 205), range);
+    }
+
+    @Test
+    public void oldestSegmentsAreDeleted() throws IOException {
+        File directory = folder.newFolder();
+        List<long[]> expected = new ArrayList<>();
+        try (TelemetryLog log = new TelemetryLog(directory, SEGMENT_SIZE, 3)) {
+            for (int i = 0; i < 1000; ++i) append(log, expected, 1000L + i, 0, i);
+        }
+        TelemetryReader reader = new TelemetryReader(directory);
+        assertEquals(3, reader.getSegmentCount());
+        assertRecords(expected.subList(700, 1000), scan(reader, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * The clock going back starts a new segment, the records keep the order they were logged in
+     */
+    @Test
+    public void clockRegression() throws IOException {
+        File directory = folder.newFolder();
+        List<long[]> expected = new ArrayList<>();
+        try (TelemetryLog log = new TelemetryLog(directory, SEGMENT_SIZE, 100)) {
+            for (int i = 0; i < 20; ++i) append(log, expected, 5000L + i, 1, i);
+            for (int i = 0; i < 20; ++i) append(log, expected, 2000L + i, 2, i);
+        }
+        TelemetryReader reader = new TelemetryReader(directory);
+        assertEquals(2, reader.getSegmentCount());
+        assertRecords(expected, scan(reader, Long.MIN_VALUE, Long.MAX_VALUE));
+        // each segment is searched on its own
+        assertRecords(expected.subList(25, 30), scan(reader, 2005, 2010));
+        assertRecords(expected.subList(0, 10), scan(reader, 3000, 5010));
+        assertEquals(30, scan(reader, 0, 5010).size());
+    }
+
+    /**
+     * The application killed in the middle of a record, then started again
+     */
+    @Test
+    public void truncatedSegment() throws IOException {
+        File directory = folder.newFolder();
+        List<long[]> expected = new ArrayList<>();
+        try (TelemetryLog log = new TelemetryLog(directory, SEGMENT_SIZE, 100)) {
+            for (int i = 0; i < 50; ++i) append(log, expected, 1000L + i, 0, i);
+        }
+        File[] segments = TelemetryLog.segments(directory);
+        assertEquals(1, segments.length);
+        try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+            raf.setLength(raf.length() - TelemetryLog.RECORD_SIZE / 2);
+        }
+        expected.remove(expected.size() - 1);
+
+        try (TelemetryLog log = new TelemetryLog(directory, SEGMENT_SIZE, 100)) {
+            for (int i = 0; i < 10; ++i) append(log, expected, 2000L + i, 1, i);
+        }
+        TelemetryReader reader = new TelemetryReader(directory);
+        assertEquals(2, reader.getSegmentCount());
+        assertEquals(59, reader.getRecordCount());
+        assertRecords(expected, scan(reader, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * A single record is written within the flush delay, without closing the log
+     */
+    @Test(timeout = 10000)
+    public void idleRecordIsWritten() throws IOException, InterruptedException {
+        File directory = folder.newFolder();
+        try (TelemetryLog log = new TelemetryLog(directory, SEGMENT_SIZE, 100)) {
+            // the writer thread is parked on an empty ring
+            Thread.sleep(100);
+            assertTrue(log.append(1234L, 2, 42));
+            while (new TelemetryReader(directory).getRecordCount() == 0) {
+                Thread.sleep(20);
+            }
+            List<long[]> records = scan(new TelemetryReader(directory), Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(1, records.size());
+            assertEquals(42, records.get(0)[2]);
+        }
+    }
+
+    /**
+     * Bursts appended by another thread, each one after the writer has gone idle again, all
+     * reach the disk without closing the log
+     */
+    @Test(timeout = 30000)
+    public void appendsFromAnotherThreadWakeTheWriter() throws Exception {
+        File directory = folder.newFolder();
+        try (TelemetryLog log = new TelemetryLog(directory, SEGMENT_SIZE, 100)) {
+            final int rounds = 10, burst = 3;
+            final Throwable[] error = new Throwable[1];
+            Thread producer = new Thread(() -> {
+                try {
+                    for (int r = 0; r < rounds; ++r) {
+                        for (int i = 0; i < burst; ++i) {
+                            assertTrue(log.append(1000L * r + i, 0, r * burst + i));
+                        }
+                        int written = (r + 1) * burst;
+                        while (new TelemetryReader(directory).getRecordCount() < written) {
+                            Thread.sleep(10);
+                        }
+                        // lets the writer park on the empty ring
+                        Thread.sleep(20);
+                    }
+                } catch (Throwable t) {
+                    error[0] = t;
+                }
+            }, "producer");
+            producer.start();
+            producer.join();
+            if (error[0] != null) throw new AssertionError(error[0]);
+            assertEquals(rounds * burst, new TelemetryReader(directory).getRecordCount());
+        }
+    }
+
+    private static void append(TelemetryLog log, List<long[]> expected, long timestamp, int characteristic, int value) {
+        assertTrue(log.append(timestamp, characteristic, value));
+        expected.add(new long[] { timestamp, characteristic, value });
+    }
+
+    private static List<long[]> scan(TelemetryReader reader, long from, long to) {
+        List<long[]> records = new ArrayList<>();
+        long scanned = reader.scan(from, to, (timestamp, characteristic, value) ->
+                records.add(new long[] { timestamp, characteristic, value }));
+        assertEquals(records.size(), scanned);
+        return records;
+    }
+
+    private static void assertRecords(List<long[]> expected, List<long[]> actual) {
+        assertEquals("records", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            long[] e = expected.get(i), a = actual.get(i);
+            assertEquals("timestamp of record " + i, e[0], a[0]);
+            assertEquals("characteristic of record " + i, e[1], a[1]);
+            assertEquals("value of record " + i, e[2], a[2]);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Project: Labo4
+ * Percentiles of the frame metrics histograms
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class HistogramTest {
+
+    @Test
+    public void countsAreExact() {
+        Histogram h = new Histogram(1, 64);
+        for (int i = 0; i < 90; ++i) h.record(2);
+        for (int i = 0; i < 10; ++i) h.record(5);
+        assertEquals(2, h.getPercentile(50));
+        assertEquals(2, h.getPercentile(90));
+        assertEquals(5, h.getPercentile(95));
+        assertEquals(5, h.getPercentile(100));
+    }
+
+    @Test
+    public void durationsAreBucketMiddles() {
+        Histogram h = new Histogram(100, 10);
+        h.record(120);
+        h.record(150);
+        h.record(420);
+        h.record(480);
+        assertEquals(150, h.getPercentile(50));
+        // never above the maximum
+        assertEquals(450, h.getPercentile(75));
+        assertEquals(480, h.getMax());
+    }
+
+    @Test
+    public void valuesAboveTheLastBucket() {
+        Histogram h = new Histogram(10, 4);
+        h.record(5);
+        h.record(1000);
+        assertEquals(5, h.getPercentile(50));
+        assertEquals(1000, h.getPercentile(99));
+    }
+
+    @Test
+    public void empty() {
+        Histogram h = new Histogram(10, 4);
+        assertEquals(0, h.getPercentile(50));
+        h.record(7);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentile(99));
+    }
+}
@@ -0,0 +1,89 @@
+package ch.heigvd.iict.sym_labo4.gl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Project: Labo4
+ * Hand-over of the rotation matrix from the sensors thread to the GL thread
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class TripleBufferedMatrixTest {
+
+    private static final int PUBLICATIONS = 500000;
+
+    @Test
+    public void latestPublication() {
+        float[] initial = filled(-1f);
+        TripleBufferedMatrix matrix = new TripleBufferedMatrix(initial);
+        assertArrayEquals(initial, matrix.latest(), 0f);
+        assertEquals(0, matrix.getTimestamp());
+
+        matrix.publish(filled(1f), 10);
+        matrix.publish(filled(2f), 20);
+        assertArrayEquals(filled(2f), matrix.latest(), 0f);
+        assertEquals(20, matrix.getTimestamp());
+        // nothing new: same matrix
+        assertArrayEquals(filled(2f), matrix.latest(), 0f);
+        assertEquals(20, matrix.getTimestamp());
+
+        matrix.publish(filled(3f), 30);
+        assertArrayEquals(filled(3f), matrix.latest(), 0f);
+        assertEquals(30, matrix.getTimestamp());
+    }
+
+    /**
+     * The writer publishes matrices filled with a sequence number, also used as timestamp:
+     * the reader must never see a matrix being written, nor go back in time
+     */
+    @Test(timeout = 60000)
+    public void concurrentPublishAndConsume() throws InterruptedException {
+        TripleBufferedMatrix matrix = new TripleBufferedMatrix(filled(0f));
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            long previous = 0;
+            while (previous < PUBLICATIONS) {
+                float[] m = matrix.latest();
+                long timestamp = matrix.getTimestamp();
+                for (float v : m) {
+                    if (v != m[0]) {
+                        failure.compareAndSet(null, "torn matrix " + Arrays.toString(m));
+                        return;
+                    }
+                }
+                if ((long) m[0] != timestamp) {
+                    failure.compareAndSet(null, "matrix " + m[0] + " with timestamp " + timestamp);
+                    return;
+                }
+                if (timestamp < previous) {
+                    failure.compareAndSet(null, "went back from " + previous + " to " + timestamp);
+                    return;
+                }
+                previous = timestamp;
+            }
+        }, "reader");
+        reader.start();
+
+        float[] values = new float[16];
+        for (int i = 1; i <= PUBLICATIONS; ++i) {
+            // exactly representable
+            Arrays.fill(values, i);
+            matrix.publish(values, i);
+        }
+        reader.join();
+        assertNull(failure.get(), failure.get());
+    }
+
+    private static float[] filled(float value) {
+        float[] m = new float[16];
+        Arrays.fill(m, value);
+        return m;
+    }
+}
@@ -0,0 +1,113 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Project: Labo4
+ * The String-based parsing of the original ObjLoader (before ObjTokenizer), kept as the
+ * reference of the geometry: vertices and indices of each group, re-centered.
+ * Colors are not produced, the original ones were random
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class BaselineObjParser {
+
+	private BaselineObjParser() { }
+
+	static List<MeshData> parse(InputStream inModel) throws IOException {
+		List<String> vertices = new ArrayList<>();
+		List<String> faces = new ArrayList<>();
+		boolean hasMaterial = false;
+
+		List<MeshData> pMeshes = new LinkedList<>();
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(inModel));
+		String line = in.readLine();
+		while(line != null){
+			if(line.startsWith("v ")){
+				vertices.add(line.substring(2));
+			}
+			else if(line.startsWith("f ")){
+				faces.add(line.substring(2));
+			}
+			else if(line.startsWith("g ")){
+				//next line contains the material to use
+				if(vertices.size() > 0 && faces.size() > 0 && hasMaterial){
+					pMeshes.add(createMesh(vertices, faces));
+					vertices = new ArrayList<>();
+					faces = new ArrayList<>();
+				}
+				in.readLine();
+				hasMaterial = true;
+			}
+			line = in.readLine();
+		}
+		pMeshes.add(createMesh(vertices, faces));
+
+		//re-center of the object
+		int nbr = 0, totX = 0, totY = 0, totZ = 0;
+		for(MeshData pm: pMeshes){
+			float[] coord = pm.getVertices();
+			for(int i = 0; i < coord.length; ++i){
+				if(i%3 == 0){
+					totX += coord[i];
+					nbr += 1;
+				}
+				else if(i%3 == 1){
+					totY += coord[i];
+				}
+				else if(i%3 == 2){
+					totZ += coord[i];
+				}
+			}
+		}
+		float mX = (float)((double)(totX) / (double)(nbr));
+		float mY = (float)((double)(totY) / (double)(nbr));
+		float mZ = (float)((double)(totZ) / (double)(nbr));
+		for(MeshData pm: pMeshes){
+			pm.recenter(mX, mY, mZ);
+		}
+		return pMeshes;
+	}
+
+	private static MeshData createMesh(List<String> vertices, List<String> faces){
+		float[] vert = new float[3 * vertices.size()];
+		short[] ind  = new short[3 * faces.size()];
+
+		for(int i = 0; i < vertices.size(); ++i){
+			String[] coord = vertices.get(i).split(" ");
+			vert[3*i + 0] = Float.parseFloat(coord[0]);
+			vert[3*i + 1] = Float.parseFloat(coord[1]);
+			vert[3*i + 2] = Float.parseFloat(coord[2]);
+		}
+
+		for(int i = 0; i < faces.size(); ++i){
+			String[] coord = faces.get(i).split(" ");
+			for(int j = 0; j < 3; ++j){
+				String[] parts = coord[j].split("/");
+				ind[3*i + j] = (short)(Short.parseShort(parts[0]) - 1);
+			}
+		}
+
+		//correction of the indices
+		short min = Short.MAX_VALUE;
+		for(int i = 0; i < ind.length; ++i){
+			if(ind[i] < min){
+				min = ind[i];
+			}
+		}
+		for(int i = 0; i < ind.length; ++i){
+			ind[i] -= min;
+		}
+
+		MeshData mesh = new MeshData();
+		mesh.setVertices(vert);
+		mesh.setIndices(ind);
+		return mesh;
+	}
+}
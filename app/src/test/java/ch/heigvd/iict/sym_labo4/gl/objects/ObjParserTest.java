@@ -0,0 +1,210 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: Labo4
+ * The meshes of ObjParser (sequential and parallel) must have exactly the geometry of the
+ * original String-based parsing (BaselineObjParser), on a corpus of models
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class ObjParserTest {
+
+	private static final String GROUPS =
+			"# two groups\n" +
+			"mtllib none.mtl\n" +
+			"g first\n" +
+			"usemtl red\n" +
+			"v 0.0 0.0 0.0\n" +
+			"v 1.0 0.0 0.0\n" +
+			"v 0.0 1.0 0.0\n" +
+			"v 0.0 0.0 1.0\n" +
+			"f 1 2 3\n" +
+			"f 1 3 4\n" +
+			"g second\n" +
+			"usemtl blue\n" +
+			"v 10.5 2.25 -3.125\n" +
+			"v 11.5 2.25 -3.125\n" +
+			"v 10.5 3.25 -3.125\n" +
+			"f 5 6 7\n";
+
+	private static final String NUMBERS =
+			"g numbers\n" +
+			"usemtl any\n" +
+			"v 1.5e-3 -2E+2 +0.25\n" +
+			"v -0 +0.0 -0.0\n" +
+			"v 1e10 -3.4028235E38 1.17549435E-38\n" +
+			"v 0.123456789012345678 -98765.4321 .5\n" +
+			"v 5. -7e0 12345678\n" +
+			"v 0.1 0.2 0.3\n" +
+			"f 1 2 3\n" +
+			"f 4 5 6\n";
+
+	private static final String FACE_FORMATS =
+			"g faces\n" +
+			"usemtl any\n" +
+			"v -1.0 -1.0 0.0\n" +
+			"v 1.0 -1.0 0.0\n" +
+			"v 1.0 1.0 0.0\n" +
+			"v -1.0 1.0 0.0\n" +
+			"vn 0.0 0.0 1.0\n" +
+			"vt 0.0 0.0\n" +
+			"f 1//1 2//1 3//1\n" +
+			"f 1/1/1 3/1/1 4/1/1\n" +
+			"f 2/1 3/1 4/1\n" +
+			"f 4 1 2\n";
+
+	@Test
+	public void groups() throws IOException {
+		assertSameGeometry(GROUPS);
+		assertSameGeometry(crlf(GROUPS));
+	}
+
+	@Test
+	public void numbers() throws IOException {
+		assertSameGeometry(NUMBERS);
+		assertSameGeometry(crlf(NUMBERS));
+	}
+
+	@Test
+	public void faceFormats() throws IOException {
+		assertSameGeometry(FACE_FORMATS);
+		assertSameGeometry(crlf(FACE_FORMATS));
+	}
+
+	@Test
+	public void noTrailingNewLine() throws IOException {
+		assertSameGeometry(GROUPS.substring(0, GROUPS.length() - 1));
+	}
+
+	@Test
+	public void asset() throws IOException {
+		File arrow = new File("src/main/assets/arrow.obj");
+		assertSameGeometry(new String(Files.readAllBytes(arrow.toPath()), StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void randomModels() throws IOException {
+		Random random = new Random(42);
+		for (int i = 0; i < 20; ++i) {
+			String model = randomModel(random, 1 + random.nextInt(5), 1 + random.nextInt(200));
+			assertSameGeometry(model);
+			assertSameGeometry(crlf(model));
+		}
+	}
+
+	/**
+	 * Large enough to be split into chunks by parseParallel(), the original parsing is limited
+	 * to 32767 vertices (short indices)
+	 */
+	@Test
+	public void largeModel() throws IOException {
+		String model = randomModel(new Random(7), 12, 2600);
+		assertTrue(model.length() > 1024 * 1024);
+		assertSameGeometry(model);
+	}
+
+	/**
+	 * A group too large for short indices, one of whose faces refers to a vertex of the next group
+	 */
+	@Test(expected = IOException.class)
+	public void faceOutsideOfLargeGroup() throws IOException {
+		int nbVertices = ObjParser.MAX_CHUNK_VERTICES + 1;
+		StringBuilder sb = new StringBuilder("g big\nusemtl a\n");
+		for (int i = 0; i < nbVertices; ++i) {
+			sb.append("v ").append(i).append(" 0 0\n");
+		}
+		sb.append("f 1 2 3\n");
+		sb.append("f 1 2 ").append(nbVertices + 1).append('\n');
+		sb.append("g next\nusemtl b\nv 0 1 0\nf ").append(nbVertices + 1).append(' ')
+				.append(nbVertices + 1).append(' ').append(nbVertices + 1).append('\n');
+		ObjParser.parse(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	/**
+	 * A small group, not split, one of whose faces refers to a vertex of the previous group
+	 */
+	@Test
+	public void faceOutsideOfSmallGroup() {
+		String model = "g first\nusemtl a\nv 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n"
+				+ "g second\nusemtl b\nv 0 0 1\nv 1 0 1\nv 0 1 1\nf 4 5 6\nf 1 5 6\n";
+		byte[] bytes = model.getBytes(StandardCharsets.US_ASCII);
+		assertThrows(IOException.class, () -> ObjParser.parse(new ByteArrayInputStream(bytes)));
+		assertThrows(IOException.class, () -> ObjParser.parseParallel(bytes, null));
+	}
+
+	private static void assertSameGeometry(String model) throws IOException {
+		byte[] bytes = model.getBytes(StandardCharsets.US_ASCII);
+		List<MeshData> expected = BaselineObjParser.parse(new ByteArrayInputStream(bytes));
+		assertSameGeometry(expected, ObjParser.parse(new ByteArrayInputStream(bytes)));
+		assertSameGeometry(expected, ObjParser.parseParallel(bytes, null));
+	}
+
+	private static void assertSameGeometry(List<MeshData> expected, List<MeshData> actual) {
+		assertEquals("meshes", expected.size(), actual.size());
+		for (int m = 0; m < expected.size(); ++m) {
+			assertArrayEquals("vertices of mesh " + m, expected.get(m).getVertices(), actual.get(m).getVertices(), 0f);
+			assertArrayEquals("indices of mesh " + m, expected.get(m).getIndices(), actual.get(m).getIndices());
+		}
+	}
+
+	private static String crlf(String model) {
+		return model.replace("\n", "\r\n");
+	}
+
+	/*
+	 * Groups of vertices written in various notations, and faces between the vertices
+	 * of their group in various formats
+	 */
+	private static String randomModel(Random random, int groups, int verticesPerGroup) {
+		StringBuilder s = new StringBuilder();
+		int first = 1;
+		for (int g = 0; g < groups; ++g) {
+			s.append("g group").append(g).append('\n').append("usemtl material").append(g).append('\n');
+			for (int v = 0; v < verticesPerGroup; ++v) {
+				s.append("v ").append(randomFloat(random)).append(' ')
+						.append(randomFloat(random)).append(' ')
+						.append(randomFloat(random)).append('\n');
+			}
+			for (int f = 0; f < 2 * verticesPerGroup; ++f) {
+				s.append('f');
+				for (int k = 0; k < 3; ++k) {
+					int index = first + random.nextInt(verticesPerGroup);
+					switch (random.nextInt(4)) {
+						case 0: s.append(' ').append(index); break;
+						case 1: s.append(' ').append(index).append("//").append(index); break;
+						case 2: s.append(' ').append(index).append('/').append(index); break;
+						default: s.append(' ').append(index).append('/').append(index).append('/').append(index); break;
+					}
+				}
+				s.append('\n');
+			}
+			first += verticesPerGroup;
+		}
+		return s.toString();
+	}
+
+	private static String randomFloat(Random random) {
+		float value = (random.nextFloat() - 0.5f) * (float) Math.pow(10, random.nextInt(9) - 4);
+		switch (random.nextInt(4)) {
+			case 0: return Float.toString(value);
+			case 1: return String.format(Locale.US, "%.6f", value);
+			case 2: return String.format(Locale.US, "%e", value);
+			default: return (value >= 0 ? "+" : "") + String.format(Locale.US, "%.3E", value);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: Labo4
+ * Filters of OrientationFusion, fed from a recording of a turning device (SyntheticRecording)
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class SensorFiltersTest {
+
+    private static final float CUTOFF = 2f;
+    private static final double SECONDS = 10;
+    // the filters have settled after the first second
+    private static final long WARMUP_NS = SyntheticRecording.START_NS + 1000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void unfilteredFollowsTheDevice() throws IOException {
+        Trace none = replay(recording(false), OrientationFusion.FILTER_NONE);
+        // only the noise of the magnetometer
+        assertTrue("error " + none.error(), none.error() < Math.toRadians(8));
+    }
+
+    @Test
+    public void lowPassSmoothes() throws IOException {
+        File recording = recording(false);
+        Trace none = replay(recording, OrientationFusion.FILTER_NONE);
+        Trace lowPass = replay(recording, OrientationFusion.FILTER_LOW_PASS);
+        assertTrue(lowPass.jitter() < none.jitter() / 2);
+        assertTrue("error " + lowPass.error(), lowPass.error() < Math.toRadians(5));
+    }
+
+    @Test
+    public void slerpSmoothes() throws IOException {
+        File recording = recording(false);
+        Trace none = replay(recording, OrientationFusion.FILTER_NONE);
+        Trace slerp = replay(recording, OrientationFusion.FILTER_SLERP);
+        assertTrue(slerp.jitter() < none.jitter() / 2);
+        assertTrue("error " + slerp.error(), slerp.error() < Math.toRadians(5));
+    }
+
+    @Test
+    public void complementaryUsesTheGyroscope() throws IOException {
+        File recording = recording(true);
+        Trace slerp = replay(recording, OrientationFusion.FILTER_SLERP);
+        Trace complementary = replay(recording, OrientationFusion.FILTER_COMPLEMENTARY);
+        // updated at each gyroscope event, without the lag of the slerp alone
+        assertTrue(complementary.count > slerp.count);
+        assertTrue(complementary.error() < slerp.error() / 2);
+        assertTrue(complementary.jitter() < slerp.jitter());
+    }
+
+    @Test
+    public void resetReplaysIdentically() throws IOException {
+        SensorRecording recording = new SensorRecording(recording(true));
+        OrientationFusion fusion = new OrientationFusion(recording.getSource(), recording.hasGyroscope());
+        assertTrue(fusion.setFilter(OrientationFusion.FILTER_COMPLEMENTARY, CUTOFF));
+        Trace first = replay(recording, fusion);
+        recording.rewind();
+        fusion.reset();
+        Trace second = replay(recording, fusion);
+        assertEquals(first.count, second.count);
+        assertArrayEquals(Arrays.copyOf(first.azimuths, first.count), Arrays.copyOf(second.azimuths, second.count), 0);
+    }
+
+    /**
+     * Without gyroscope events, the complementary filter is the slerp
+     */
+    @Test
+    public void complementaryWithoutGyroscopeIsSlerp() throws IOException {
+        SensorRecording recording = new SensorRecording(recording(false));
+        OrientationFusion fusion = new OrientationFusion(recording.getSource(), false);
+        SlerpFilter slerp = new SlerpFilter(CUTOFF);
+        ComplementaryFilter complementary = new ComplementaryFilter(CUTOFF);
+        float[] expected = new float[16], actual = new float[16];
+        int n = 0;
+        while (recording.next()) {
+            if (!fusion.onSensorData(recording.getType(), recording.getValues(),
+                    recording.getValueCount(), recording.getTimestamp())) {
+                continue;
+            }
+            System.arraycopy(fusion.getRotationMatrix(), 0, expected, 0, 16);
+            System.arraycopy(fusion.getRotationMatrix(), 0, actual, 0, 16);
+            slerp.filter(expected, fusion.getTimestamp());
+            complementary.filter(actual, fusion.getTimestamp());
+            assertArrayEquals(expected, actual, 0f);
+            n++;
+        }
+        assertTrue(n > 0);
+    }
+
+    private File recording(boolean withGyroscope) throws IOException {
+        File file = folder.newFile("rotation" + SensorRecorder.EXTENSION);
+        SyntheticRecording.write(file, SECONDS, withGyroscope, 42);
+        return file;
+    }
+
+    private static Trace replay(File file, String filter) throws IOException {
+        SensorRecording recording = new SensorRecording(file);
+        OrientationFusion fusion = new OrientationFusion(recording.getSource(), recording.hasGyroscope());
+        assertTrue(fusion.setFilter(filter, CUTOFF));
+        return replay(recording, fusion);
+    }
+
+    private static Trace replay(SensorRecording recording, OrientationFusion fusion) {
+        Trace trace = new Trace();
+        while (recording.next()) {
+            if (fusion.onSensorData(recording.getType(), recording.getValues(),
+                    recording.getValueCount(), recording.getTimestamp())) {
+                trace.add(fusion.getTimestamp(), fusion.getRotationMatrix());
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Azimuths of the orientations computed from a recording
+     */
+    private static final class Trace {
+
+        long[] timestamps = new long[1024];
+        double[] azimuths = new double[1024];
+        int count = 0;
+
+        void add(long timestamp, float[] rotationMatrix) {
+            if (count == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, 2 * count);
+                azimuths = Arrays.copyOf(azimuths, 2 * count);
+            }
+            timestamps[count] = timestamp;
+            azimuths[count] = SyntheticRecording.azimuth(rotationMatrix);
+            count++;
+        }
+
+        /**
+         * @return mean absolute difference with the true azimuth, in radians
+         */
+        double error() {
+            double sum = 0;
+            int n = 0;
+            for (int i = 0; i < count; ++i) {
+                if (timestamps[i] < WARMUP_NS) continue;
+                sum += Math.abs(SyntheticRecording.wrap(azimuths[i] - SyntheticRecording.azimuth(timestamps[i])));
+                n++;
+            }
+            return sum / n;
+        }
+
+        /**
+         * @return RMS difference between the changes of the azimuth and those of the true azimuth
+         */
+        double jitter() {
+            double sum = 0;
+            int n = 0;
+            for (int i = 1; i < count; ++i) {
+                if (timestamps[i - 1] < WARMUP_NS) continue;
+                double step = SyntheticRecording.wrap(azimuths[i] - azimuths[i - 1]);
+                double expected = SyntheticRecording.wrap(SyntheticRecording.azimuth(timestamps[i])
+                        - SyntheticRecording.azimuth(timestamps[i - 1]));
+                sum += (step - expected) * (step - expected);
+                n++;
+            }
+            return Math.sqrt(sum / n);
+        }
+    }
+}
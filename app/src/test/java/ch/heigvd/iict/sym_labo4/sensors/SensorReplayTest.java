@@ -0,0 +1,120 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+import android.hardware.Sensor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: Labo4
+ * Recording of the sensor events and their replay through the orientation path
+ * (C) 2022 - HEIG-VD, IICT
+ */
+public class SensorReplayTest {
+
+    private static final float CUTOFF = 2f;
+    private static final float THRESHOLD = 0.5f;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordingRoundTrip() throws IOException {
+        File file = folder.newFile("events" + SensorRecorder.EXTENSION);
+        try (SensorRecorder recorder = new SensorRecorder(file, OrientationFusion.Source.ROTATION_VECTOR, true)) {
+            recorder.record(Sensor.TYPE_ROTATION_VECTOR, new float[] { 0.1f, 0.2f, 0.3f, 0.9f, 0f }, 5, 100);
+            recorder.record(Sensor.TYPE_GYROSCOPE, new float[] { -1f, 0f, 1f }, 3, 200);
+        }
+        // a second session on other sensors, whose last record is truncated (e.g. the application was killed)
+        try (SensorRecorder recorder = new SensorRecorder(file, OrientationFusion.Source.ACCELEROMETER_MAGNETOMETER, false)) {
+            recorder.record(Sensor.TYPE_ACCELEROMETER, new float[] { 2f, 3f, 4f }, 3, 300);
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] { Sensor.TYPE_GYROSCOPE, 3, 0, 0, 0 });
+        }
+
+        SensorRecording recording = new SensorRecording(file);
+        assertEquals(OrientationFusion.Source.ROTATION_VECTOR, recording.getSource());
+        assertTrue(recording.hasGyroscope());
+        assertNext(recording, Sensor.TYPE_ROTATION_VECTOR, 100, 0.1f, 0.2f, 0.3f, 0.9f, 0f);
+        assertNext(recording, Sensor.TYPE_GYROSCOPE, 200, -1f, 0f, 1f);
+        assertEquals(OrientationFusion.Source.ROTATION_VECTOR, recording.getSessionSource());
+        assertNext(recording, Sensor.TYPE_ACCELEROMETER, 300, 2f, 3f, 4f);
+        assertEquals(OrientationFusion.Source.ACCELEROMETER_MAGNETOMETER, recording.getSessionSource());
+        assertFalse(recording.sessionHasGyroscope());
+        assertFalse(recording.next());
+        // still the first session's sensors
+        assertEquals(OrientationFusion.Source.ROTATION_VECTOR, recording.getSource());
+        assertTrue(recording.hasGyroscope());
+
+        recording.rewind();
+        assertNext(recording, Sensor.TYPE_ROTATION_VECTOR, 100, 0.1f, 0.2f, 0.3f, 0.9f, 0f);
+        assertEquals(OrientationFusion.Source.ROTATION_VECTOR, recording.getSessionSource());
+    }
+
+    @Test
+    public void replayIsDeterministic() throws IOException {
+        File file = folder.newFile("rotation" + SensorRecorder.EXTENSION);
+        SyntheticRecording.write(file, 5, true, 7);
+
+        StringWriter first = new StringWriter(), second = new StringWriter();
+        SensorReplay.Stats a = replay(file, OrientationFusion.FILTER_COMPLEMENTARY, 1, first);
+        SensorReplay.Stats b = replay(file, OrientationFusion.FILTER_COMPLEMENTARY, 1, second);
+        assertEquals(a.events, b.events);
+        assertEquals(a.orientations, b.orientations);
+        assertEquals(a.renders, b.renders);
+        assertEquals(first.toString(), second.toString());
+
+        // 200 gyroscope, 100 accelerometer and 100 magnetometer events per second
+        assertEquals(5 * 400, a.events);
+        assertTrue(a.renders > 0 && a.renders <= a.orientations);
+        assertEquals(a.renders + 1, first.toString().split("\n").length);
+    }
+
+    @Test
+    public void repeatedReplaysAreIdentical() throws IOException {
+        File file = folder.newFile("rotation" + SensorRecorder.EXTENSION);
+        SyntheticRecording.write(file, 3, false, 11);
+
+        StringWriter once = new StringWriter(), twice = new StringWriter();
+        SensorReplay.Stats one = replay(file, OrientationFusion.FILTER_SLERP, 1, once);
+        SensorReplay.Stats two = replay(file, OrientationFusion.FILTER_SLERP, 2, twice);
+        assertEquals(2 * one.events, two.events);
+        assertEquals(2 * one.orientations, two.orientations);
+        assertEquals(2 * one.renders, two.renders);
+        // one orientation per accelerometer and magnetometer pair
+        assertEquals(3 * 100, one.orientations);
+
+        String body = once.toString().substring(once.toString().indexOf('\n') + 1);
+        assertEquals(once.toString() + body, twice.toString());
+    }
+
+    private static SensorReplay.Stats replay(File file, String filter, int repeat, StringWriter trace)
+            throws IOException {
+        SensorRecording recording = new SensorRecording(file);
+        OrientationFusion fusion = new OrientationFusion(recording.getSource(), recording.hasGyroscope());
+        assertTrue(fusion.setFilter(filter, CUTOFF));
+        return SensorReplay.replay(recording, fusion, new RotationChangeDetector(THRESHOLD), repeat, false, trace);
+    }
+
+    private static void assertNext(SensorRecording recording, int type, long timestamp, float... values) {
+        assertTrue(recording.next());
+        assertEquals(type, recording.getType());
+        assertEquals(timestamp, recording.getTimestamp());
+        assertEquals(values.length, recording.getValueCount());
+        float[] read = new float[recording.getValueCount()];
+        System.arraycopy(recording.getValues(), 0, read, 0, read.length);
+        assertArrayEquals(values, read, 0f);
+    }
+}
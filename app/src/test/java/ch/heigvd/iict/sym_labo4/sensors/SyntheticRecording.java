@@ -0,0 +1,91 @@
+package ch.heigvd.iict.sym_labo4.sensors;
+
+import android.hardware.Sensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Project: Labo4
+ * Writes .syms recordings of a device lying flat and turning around its vertical axis at a
+ * constant speed: noisy accelerometer and magnetometer at 100 Hz, and optionally a gyroscope
+ * at 200 Hz. The true azimuth is known at any time, see azimuth()
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class SyntheticRecording {
+
+    static final long START_NS = 1000000000L;
+    // clockwise seen from above, i.e. the azimuth increases
+    static final double SPEED = 0.5;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long MAGNETOMETER_PERIOD_NS = NANOS_PER_SECOND / 100;
+    private static final long GYROSCOPE_PERIOD_NS = NANOS_PER_SECOND / 200;
+    private static final float GRAVITY = 9.81f;
+    // horizontal (north) and vertical (down) components of the magnetic field, in uT
+    private static final float FIELD_NORTH = 20f, FIELD_DOWN = 40f;
+    private static final float ACCELEROMETER_NOISE = 0.3f, MAGNETOMETER_NOISE = 1.5f, GYROSCOPE_NOISE = 0.01f;
+
+    private SyntheticRecording() { }
+
+    /**
+     * Writes a session of the given duration at the end of the file
+     */
+    static void write(File file, double seconds, boolean withGyroscope, long seed) throws IOException {
+        Random random = new Random(seed);
+        float[] values = new float[3];
+        long end = START_NS + (long) (seconds * NANOS_PER_SECOND);
+        try (SensorRecorder recorder = new SensorRecorder(file,
+                OrientationFusion.Source.ACCELEROMETER_MAGNETOMETER, withGyroscope)) {
+            for (long t = START_NS; t < end; t += GYROSCOPE_PERIOD_NS) {
+                if (withGyroscope) {
+                    values[0] = noise(random, GYROSCOPE_NOISE);
+                    values[1] = noise(random, GYROSCOPE_NOISE);
+                    // counter-clockwise is positive
+                    values[2] = (float) -SPEED + noise(random, GYROSCOPE_NOISE);
+                    recorder.record(Sensor.TYPE_GYROSCOPE, values, 3, t);
+                }
+                if ((t - START_NS) % MAGNETOMETER_PERIOD_NS != 0) continue;
+
+                values[0] = noise(random, ACCELEROMETER_NOISE);
+                values[1] = noise(random, ACCELEROMETER_NOISE);
+                values[2] = GRAVITY + noise(random, ACCELEROMETER_NOISE);
+                recorder.record(Sensor.TYPE_ACCELEROMETER, values, 3, t);
+
+                // the y axis of the device points towards the azimuth
+                double azimuth = azimuth(t);
+                values[0] = (float) (-FIELD_NORTH * Math.sin(azimuth)) + noise(random, MAGNETOMETER_NOISE);
+                values[1] = (float) (FIELD_NORTH * Math.cos(azimuth)) + noise(random, MAGNETOMETER_NOISE);
+                values[2] = -FIELD_DOWN + noise(random, MAGNETOMETER_NOISE);
+                recorder.record(Sensor.TYPE_MAGNETIC_FIELD, values, 3, t + 1000);
+            }
+        }
+    }
+
+    /**
+     * @return the true azimuth at the given time, in radians within [-pi, pi]
+     */
+    static double azimuth(long timestamp) {
+        return wrap(SPEED * (timestamp - START_NS) / NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return the azimuth of a rotation matrix of OrientationFusion, in radians
+     * (same as SensorManager.getOrientation())
+     */
+    static double azimuth(float[] R) {
+        return Math.atan2(R[1], R[5]);
+    }
+
+    /**
+     * @return the angle within [-pi, pi]
+     */
+    static double wrap(double angle) {
+        return Math.atan2(Math.sin(angle), Math.cos(angle));
+    }
+
+    private static float noise(Random random, float sigma) {
+        return (float) random.nextGaussian() * sigma;
+    }
+}
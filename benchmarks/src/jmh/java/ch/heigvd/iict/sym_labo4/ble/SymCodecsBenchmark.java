@@ -0,0 +1,60 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Labo4
+ * Encoding and decoding of the characteristic values exchanged with the SYM Pixl
+ * (C) 2022 - HEIG-VD, IICT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SymCodecsBenchmark {
+
+    private final byte[] integer = new byte[SymCodecs.INTEGER_SIZE];
+    private final byte[] temperature = { (byte) 0xE6, 0x00 };
+    private final byte[] clicks = { 42 };
+    private final byte[] currentTime = new byte[SymCodecs.CURRENT_TIME_SIZE];
+    private final LocalDateTime now = LocalDateTime.of(2022, 1, 14, 10, 30, 59);
+    private int value = 0x12345678;
+
+    public SymCodecsBenchmark() {
+        SymCodecs.encodeCurrentTime(now, currentTime, 0);
+    }
+
+    @Benchmark
+    public byte[] encodeInteger() {
+        SymCodecs.encodeInteger(value++, integer, 0);
+        return integer;
+    }
+
+    @Benchmark
+    public int decodeTemperature() {
+        return SymCodecs.decodeTemperature(temperature);
+    }
+
+    @Benchmark
+    public int decodeButtonClicks() {
+        return SymCodecs.decodeButtonClicks(clicks);
+    }
+
+    @Benchmark
+    public byte[] encodeCurrentTime() {
+        SymCodecs.encodeCurrentTime(now, currentTime, 0);
+        return currentTime;
+    }
+
+    @Benchmark
+    public LocalDateTime decodeCurrentTime() {
+        return SymCodecs.decodeCurrentTime(currentTime);
+    }
+}
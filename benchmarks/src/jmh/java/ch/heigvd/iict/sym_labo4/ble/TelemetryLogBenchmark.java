@@ -0,0 +1,103 @@
+package ch.heigvd.iict.sym_labo4.ble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Labo4
+ * Telemetry log: sustained appends of a burst of records (waiting when the writer thread is
+ * late, so the rate is the one of the disk writes) and range scans of a memory-mapped log
+ * (C) 2022 - HEIG-VD, IICT
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TelemetryLogBenchmark {
+
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+    private static final int RECORDS = 1000000;
+
+    @State(Scope.Thread)
+    public static class Writing {
+        File directory;
+        TelemetryLog log;
+        long timestamp = 0;
+
+        @Setup(Level.Iteration)
+        public void open() throws IOException {
+            directory = Files.createTempDirectory("telemetry").toFile();
+            log = new TelemetryLog(directory, SEGMENT_SIZE, 4);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            log.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Reading {
+        File directory;
+        TelemetryReader reader;
+        long from = 0;
+
+        @Setup
+        public void write() throws IOException {
+            directory = Files.createTempDirectory("telemetry").toFile();
+            TelemetryLog log = new TelemetryLog(directory, SEGMENT_SIZE, Integer.MAX_VALUE);
+            for (int i = 0; i < RECORDS; ++i) {
+                while (!log.append(i, i % NotificationStore.CHARACTERISTICS, i)) {
+                    Thread.yield();
+                }
+            }
+            log.close();
+            reader = new TelemetryReader(directory);
+        }
+
+        @TearDown
+        public void delete() {
+            TelemetryLogBenchmark.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public long append(Writing state) {
+        long t = state.timestamp++;
+        while (!state.log.append(t, (int) (t % NotificationStore.CHARACTERISTICS), (int) t)) {
+            Thread.yield();
+        }
+        return t;
+    }
+
+    /**
+     * 1000 consecutive records, anywhere in the log
+     */
+    @Benchmark
+    public long scan(Reading state) {
+        long from = state.from;
+        state.from = (from + 7919) % (RECORDS - 1000);
+        long[] sum = { 0 };
+        state.reader.scan(from, from + 1000, (timestamp, characteristic, value) -> sum[0] += value);
+        return sum[0];
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        directory.delete();
+    }
+}
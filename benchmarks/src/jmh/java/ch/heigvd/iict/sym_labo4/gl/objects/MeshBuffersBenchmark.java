@@ -0,0 +1,76 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Labo4
+ * Building of the buffers given to OpenGL: copies into direct buffers as done by
+ * Mesh.setVertices/setIndices/setColors (only for per-vertex colors), and mapping of
+ * a precompiled binary mesh
+ * (C) 2022 - HEIG-VD, IICT
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MeshBuffersBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int triangles;
+
+	private List<MeshData> meshes;
+	private ByteBuffer binary;
+
+	@Setup
+	public void load() throws IOException {
+		byte[] obj = SyntheticModels.obj(triangles);
+		meshes = ObjParser.parse(new ByteArrayInputStream(obj));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryMesh.write(meshes, BinaryMesh.Fingerprint.of(obj, null), out);
+		byte[] bytes = out.toByteArray();
+		// like the memory-mapped asset
+		binary = ByteBuffer.allocateDirect(bytes.length);
+		binary.put(bytes).flip();
+	}
+
+	/**
+	 * Copies of the vertices, indices and colors of all the meshes
+	 */
+	@Benchmark
+	public void directBuffers(Blackhole bh) {
+		for (MeshData m : meshes) {
+			bh.consume(DirectBuffers.of(m.getVertices()));
+			bh.consume(DirectBuffers.of(m.getIndices()));
+			if (m.getColors() != null) {
+				bh.consume(DirectBuffers.of(m.getColors()));
+			}
+		}
+	}
+
+	/**
+	 * Validation and slicing of a binary mesh, no copy when the device is little endian
+	 */
+	@Benchmark
+	public void binaryMesh(Blackhole bh) throws IOException {
+		BinaryMesh mesh = BinaryMesh.read(binary);
+		for (int i = 0; i < mesh.getMeshCount(); ++i) {
+			bh.consume(mesh.getVertices(i));
+			bh.consume(mesh.getIndices(i));
+			bh.consume(mesh.getColors(i));
+		}
+	}
+}
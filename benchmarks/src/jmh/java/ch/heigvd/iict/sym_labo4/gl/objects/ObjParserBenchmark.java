@@ -0,0 +1,83 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Project: Labo4
+ * Loading of the models as done by ObjLoader on a cache miss: parsing of the .obj text
+ * and re-centering of the meshes, and their optimisation by MeshConverter
+ * (C) 2022 - HEIG-VD, IICT
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ObjParserBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int triangles;
+
+	private byte[] obj;
+	private List<MeshData> meshes;
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		obj = SyntheticModels.obj(triangles);
+	}
+
+	@Setup(Level.Invocation)
+	public void parseOnce() throws IOException {
+		// recentering and optimisation are done in place, each invocation gets fresh meshes
+		meshes = ObjParser.parse(new ByteArrayInputStream(obj));
+	}
+
+	/**
+	 * Tokenizing, grouping and re-centering of the whole model
+	 */
+	@Benchmark
+	public List<MeshData> parse() throws IOException {
+		return ObjParser.parse(new ByteArrayInputStream(obj));
+	}
+
+	/**
+	 * Same as parse(), tokenized by chunks on all the cores
+	 */
+	@Benchmark
+	public List<MeshData> parseParallel() throws IOException {
+		return ObjParser.parseParallel(obj, null);
+	}
+
+	/**
+	 * Re-centering alone
+	 */
+	@Benchmark
+	public List<MeshData> recenter() {
+		for (MeshData m : meshes) {
+			m.recenter(0.5f, 0.25f, 0.125f);
+		}
+		return meshes;
+	}
+
+	/**
+	 * Welding and reordering of all the meshes (MeshOptimizer)
+	 */
+	@Benchmark
+	public List<MeshData> optimize() {
+		for (MeshData m : meshes) {
+			MeshOptimizer.optimize(m);
+		}
+		return meshes;
+	}
+}
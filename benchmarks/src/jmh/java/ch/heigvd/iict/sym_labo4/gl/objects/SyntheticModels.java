@@ -0,0 +1,65 @@
+package ch.heigvd.iict.sym_labo4.gl.objects;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Project: Labo4
+ * Generates .obj models of a given size in the same style as arrow.obj (a "g" line followed
+ * by "usemtl", "v" lines and "f" lines with global indices and normals), made of wavy grids.
+ * The output only depends on the number of triangles, the results of the benchmarks
+ * can thus be compared over time
+ * (C) 2022 - HEIG-VD, IICT
+ */
+final class SyntheticModels {
+
+	// quads per row of a grid
+	private static final int COLUMNS = 64;
+	// rows per group, so that the vertices of a group can be indexed with a short
+	private static final int MAX_ROWS = 256;
+
+	private SyntheticModels() { }
+
+	/**
+	 * @return the text of a model with (at least) the given number of triangles,
+	 * split into groups of at most 2 * COLUMNS * MAX_ROWS triangles
+	 */
+	static byte[] obj(int triangles) {
+		int rows = Math.max(1, (triangles + 2 * COLUMNS - 1) / (2 * COLUMNS));
+		StringBuilder sb = new StringBuilder(rows * 200 * COLUMNS);
+		sb.append("#Synthetic model, ").append(triangles).append(" triangles\n");
+		int firstVertex = 1, group = 0;
+		for (int row = 0; row < rows; row += MAX_ROWS, ++group) {
+			int groupRows = Math.min(MAX_ROWS, rows - row);
+			sb.append("g Grid_").append(group).append('\n');
+			sb.append("usemtl mat").append(group % 4).append('\n');
+			for (int r = 0; r <= groupRows; ++r) {
+				for (int c = 0; c <= COLUMNS; ++c) {
+					float x = c * 0.1f;
+					float z = (row + r) * 0.1f;
+					float y = (float) (Math.sin(x) * Math.cos(z));
+					sb.append(String.format(Locale.US, "v %.5f %.5f %.5f\n", x, y, z - group * 0.05f));
+				}
+			}
+			for (int r = 0; r < groupRows; ++r) {
+				for (int c = 0; c < COLUMNS; ++c) {
+					int a = firstVertex + r * (COLUMNS + 1) + c;
+					int b = a + 1;
+					int d = a + COLUMNS + 1;
+					int e = d + 1;
+					face(sb, a, d, b);
+					face(sb, b, d, e);
+				}
+			}
+			firstVertex += (groupRows + 1) * (COLUMNS + 1);
+		}
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static void face(StringBuilder sb, int a, int b, int c) {
+		// the grid is (roughly) facing up, a single normal is enough
+		sb.append("f ").append(a).append("//1 ")
+				.append(b).append("//1 ")
+				.append(c).append("//1\n");
+	}
+}